@@ -0,0 +1,219 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import com.google.common.collect.ImmutableList;
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+
+// Plays whole games without the UI, on all cores, to measure how well an ai does.
+// Every game has its own seed, the runner's seed plus the game's number. It picks the start locations with
+// ScotlandYard.generateMrXLocation/generateDetectiveLocations and is handed to the factories of the ais,
+// so a run with seeded ais plays the same games every time, however many threads play them.
+public final class BatchRunner {
+
+	private final GameSetup setup;
+	// Create the ai of each side for one game from the game's seed, ais keep state between moves so every
+	// game gets new ones. The detectives' ai moves all of the detectives.
+	private final LongFunction<? extends Ai> mrX;
+	private final LongFunction<? extends Ai> detectives;
+	private final int detectiveCount;
+	private final Pair<Long, TimeUnit> timeout;
+	private final int threads;
+
+	public BatchRunner(GameSetup setup,
+			LongFunction<? extends Ai> mrX,
+			LongFunction<? extends Ai> detectives,
+			int detectiveCount,
+			Pair<Long, TimeUnit> timeout,
+			int threads) {
+		if (detectiveCount < 1 || detectiveCount > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("Bad number of detectives: " + detectiveCount);
+		if (threads < 1) throw new IllegalArgumentException("Bad number of threads: " + threads);
+		this.setup = setup;
+		this.mrX = mrX;
+		this.detectives = detectives;
+		this.detectiveCount = detectiveCount;
+		this.timeout = timeout;
+		this.threads = threads;
+	}
+
+	// What happened in a run of games
+	public static final class Result {
+		private final int games;
+		private final int mrXWins;
+		private final int detectiveWins;
+		private final long plies;
+		// Number of games that ended after each number of rounds, the length of Mr X's travel log
+		private final int[] rounds;
+		private final long nanos;
+
+		private Result(int games, int mrXWins, int detectiveWins, long plies, int[] rounds, long nanos) {
+			this.games = games;
+			this.mrXWins = mrXWins;
+			this.detectiveWins = detectiveWins;
+			this.plies = plies;
+			this.rounds = rounds;
+			this.nanos = nanos;
+		}
+
+		public int games() { return games; }
+
+		public int mrXWins() { return mrXWins; }
+
+		public int detectiveWins() { return detectiveWins; }
+
+		// Games where nobody could move but nobody had won either, the remaining detectives blocking each other
+		public int unfinished() { return games - mrXWins - detectiveWins; }
+
+		// Returns the number of games that lasted the given number of rounds
+		public int gamesOfLength(int rounds) {
+			return rounds >= 0 && rounds < this.rounds.length ? this.rounds[rounds] : 0;
+		}
+
+		public double mrXWinRate() { return games == 0 ? 0 : (double) mrXWins / games; }
+
+		public double meanRounds() {
+			long total = 0;
+			for (int i = 0; i < rounds.length; i++) total += (long) i * rounds[i];
+			return games == 0 ? 0 : (double) total / games;
+		}
+
+		public double gamesPerSecond() { return games * 1e9 / Math.max(nanos, 1); }
+
+		public double pliesPerSecond() { return plies * 1e9 / Math.max(nanos, 1); }
+
+		@Override public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(String.format("%d games in %.2fs, %.1f games/s, %.0f moves/s%n",
+					games, nanos / 1e9, gamesPerSecond(), pliesPerSecond()));
+			builder.append(String.format("Mr X won %d (%.1f%%), detectives won %d (%.1f%%), unfinished %d%n",
+					mrXWins, 100 * mrXWinRate(), detectiveWins, 100.0 * detectiveWins / Math.max(games, 1), unfinished()));
+			builder.append(String.format("Mean length %.2f rounds%n", meanRounds()));
+			for (int i = 0; i < rounds.length; i++) {
+				if (rounds[i] != 0) builder.append(String.format("%3d rounds: %d%n", i, rounds[i]));
+			}
+			return builder.toString();
+		}
+	}
+
+	// Plays the given number of games, numbered from 0, with the seeds that follow the given one
+	public Result run(int games, long seed) throws InterruptedException {
+		// Indexed by game number so the totals don't depend on which thread played what
+		Outcome[] outcomes = new Outcome[games];
+		AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(pool.submit(() -> {
+					for (int i = next.getAndIncrement(); i < games; i = next.getAndIncrement())
+						outcomes[i] = play(seed + i);
+				}));
+			}
+			for (Future<?> worker : workers) worker.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		long nanos = System.nanoTime() - start;
+
+		int mrXWins = 0;
+		int detectiveWins = 0;
+		long totalPlies = 0;
+		int[] rounds = new int[setup.moves.size() + 1];
+		for (Outcome outcome : outcomes) {
+			if (outcome.winner != null && outcome.winner.isMrX()) mrXWins++;
+			else if (outcome.winner != null) detectiveWins++;
+			rounds[outcome.rounds]++;
+			totalPlies += outcome.plies;
+		}
+		return new Result(games, mrXWins, detectiveWins, totalPlies, rounds, nanos);
+	}
+
+	// How one game ended, the winner is one of the winning pieces or null if nobody won
+	private static final class Outcome {
+		private final Piece winner;
+		private final int rounds;
+		private final int plies;
+
+		private Outcome(Piece winner, int rounds, int plies) {
+			this.winner = winner;
+			this.rounds = rounds;
+			this.plies = plies;
+		}
+	}
+
+	// Returns the start of the game with the given seed: default tickets for everyone and random start
+	// locations picked with the seed
+	static GameState startState(GameSetup setup, int detectiveCount, long seed) {
+		var locations = ScotlandYard.generateDetectiveLocations((int) seed, detectiveCount);
+		var players = ImmutableList.<Player>builder();
+		for (int i = 0; i < detectiveCount; i++) {
+			Piece piece = ScotlandYard.DETECTIVES.asList().get(i);
+			players.add(new Player(piece, ScotlandYard.defaultDetectiveTickets(), locations.get(i)));
+		}
+		return new MyGameStateFactory().build(setup,
+				new Player(MrX.MRX, ScotlandYard.defaultMrXTickets(), ScotlandYard.generateMrXLocation((int) seed)),
+				players.build());
+	}
+
+	// Plays the game with the given seed to the end
+	private Outcome play(long seed) {
+		GameState state = startState(setup, detectiveCount, seed);
+		Ai mrXAi = mrX.apply(seed);
+		Ai detectivesAi = detectives.apply(seed);
+		mrXAi.onStart();
+		detectivesAi.onStart();
+		int plies = 0;
+		try {
+			while (state.getWinner().isEmpty() && !state.getAvailableMoves().isEmpty()) {
+				Ai ai = state.getAvailableMoves().iterator().next().commencedBy() instanceof Detective ? detectivesAi : mrXAi;
+				Move move = ai.pickMove(state, timeout);
+				if (!state.getAvailableMoves().contains(move))
+					throw new IllegalStateException(ai.name() + " picked an illegal move " + move + " in game " + seed);
+				state = state.advance(move);
+				plies++;
+			}
+		} finally {
+			mrXAi.onTerminate();
+			detectivesAi.onTerminate();
+		}
+		Piece winner = state.getWinner().isEmpty() ? null : state.getWinner().iterator().next();
+		return new Outcome(winner, state.getMrXTravelLog().size(), plies);
+	}
+
+	// Plays MyAi as Mr X against random detectives on the standard map and prints the results.
+	// Arguments, all optional: games, detectives, seed, threads, milliseconds per move
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int detectiveCount = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long millis = args.length > 4 ? Long.parseLong(args[4]) : 100;
+
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		BatchRunner runner = new BatchRunner(setup,
+				s -> new MyAi(1L << 20, s),
+				RandomAi::new,
+				detectiveCount,
+				Pair.pair(millis, TimeUnit.MILLISECONDS),
+				threads);
+		System.out.print(runner.run(games, seed));
+	}
+}
@@ -0,0 +1,194 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+// Plays the detectives without looking at where Mr X really is. The travel log narrows him down to a set of
+// possible locations (see PossibleLocations), and each of those is a guess the ai searches as if it was
+// true, a determinization. A move's score is its average over all the guesses searched, so the move that
+// is good wherever Mr X is wins over one that is only great if he is in one place.
+// For a guess, each of the detectives' moves is made and the detectives still to move this round head for
+// the guessed location, so a move is scored by how well it works with what the others will do. Then Mr X,
+// knowing the guess is where he is, makes his best escape, searched by MyAi's alpha-beta. Lower scores,
+// Mr X closer to a detective, are better.
+// Guesses are searched side by side on all cores until the time is up or every possible location has been.
+// The time can run out halfway through a guess, even halfway through searching a move, the moves searched
+// for it by then keep their scores.
+public class DetectiveAi implements Ai, Sides.Declared {
+
+	// Plies Mr X's escape is searched to after the detectives' round
+	private static final int DEFAULT_DEPTH = 1;
+	// Score of a guess where Mr X is caught, and one where he gets away for good
+	static final int CAUGHT = -1;
+	static final int ESCAPED = 1000;
+
+	private final int depth;
+	private final int threads;
+	// Most guesses to search for one move, 0 for no limit
+	private final int determinizations;
+	private final Random random;
+	private final MyAi search;
+	private ForkJoinPool pool;
+	// Mr X's possible locations in the game being played, for the setup it was made for
+	private PossibleLocations possible;
+	private GameSetup possibleSetup;
+	private int lastDeterminizations;
+
+	public DetectiveAi() { this(DEFAULT_DEPTH, Runtime.getRuntime().availableProcessors(), 0, new Random()); }
+
+	// Creates the ai searching Mr X's escapes to the given depth on the given number of threads, with at most the
+	// given number of guesses per move, 0 for as many as there is time for. The guesses are picked with the
+	// random, with a seeded one and a limit the moves are the same every time.
+	public DetectiveAi(int depth, int threads, int determinizations, Random random) {
+		if (depth < 1) throw new IllegalArgumentException("Bad depth: " + depth);
+		if (threads < 1) throw new IllegalArgumentException("Bad number of threads: " + threads);
+		if (determinizations < 0) throw new IllegalArgumentException("Bad number of determinizations: " + determinizations);
+		this.depth = depth;
+		this.threads = threads;
+		this.determinizations = determinizations;
+		this.random = random;
+		this.search = new MyAi(4L << 20, random, 1);
+	}
+
+	@Nonnull @Override public String name() { return "Robot Sophia Detectives"; }
+
+	@Nonnull @Override public Sides sides() { return Sides.DETECTIVES; }
+
+	@Override public void onStart() { possible = null; }
+
+	// Shuts the search threads down, the ai can still be used after but makes new ones
+	@Override public void onTerminate() {
+		possible = null;
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	// Returns the number of guesses at Mr X's location searched for the last move
+	public int lastDeterminizations() { return lastDeterminizations; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		var moves = board.getAvailableMoves().asList();
+		if (moves.size() == 1) return moves.get(0);
+		long deadline = System.nanoTime() + MyAi.searchTime(timeoutPair);
+
+		List<Integer> guesses = new ArrayList<>(possibleLocations(board).asSet());
+		Collections.shuffle(guesses, random);
+		if (determinizations > 0 && guesses.size() > determinizations) guesses = guesses.subList(0, determinizations);
+
+		int n = moves.size();
+		long[] candidates = new long[n];
+		for (int i = 0; i < n; i++) candidates[i] = PackedMove.of(moves.get(i));
+		// Each thread adds up its own scores, they are put together once all are done
+		List<Integer> searched = guesses;
+		AtomicInteger next = new AtomicInteger();
+		List<ForkJoinTask<long[]>> workers = new ArrayList<>();
+		for (int t = 1; t < threads; t++)
+			workers.add(pool().submit(() -> searchGuesses(board, candidates, searched, next, deadline)));
+		long[] totals = searchGuesses(board, candidates, searched, next, deadline);
+		for (ForkJoinTask<long[]> worker : workers) {
+			long[] scores = worker.join();
+			for (int i = 0; i < totals.length; i++) totals[i] += scores[i];
+		}
+		lastDeterminizations = (int) totals[2 * n];
+
+		// The first with the best average is picked, the guesses were shuffled already. A move that wasn't
+		// searched for any guess is only picked if none was.
+		int best = 0;
+		for (int i = 1; i < n; i++) {
+			if (totals[n + i] == 0) continue;
+			if (totals[n + best] == 0 || (double) totals[i] / totals[n + i] < (double) totals[best] / totals[n + best])
+				best = i;
+		}
+		return moves.get(best);
+	}
+
+	// Returns the nodes Mr X could be at, kept up to date from one move to the next
+	private PossibleLocations possibleLocations(Board board) {
+		if (possible == null
+				|| possibleSetup != board.getSetup()
+				|| possible.entries() > board.getMrXTravelLog().size()) {
+			possible = new PossibleLocations(board.getSetup(), ScotlandYard.MRX_LOCATIONS);
+			possibleSetup = board.getSetup();
+		}
+		possible.update(board);
+		// Mr X didn't start at one of the usual places, he could have started anywhere
+		if (possible.size() == 0) possible = PossibleLocations.of(board);
+		return possible;
+	}
+
+	// Searches the guesses not taken by another thread until the time is up, which is checked before each
+	// candidate move and during Mr X's search. Returns the sum of the scores of each candidate move over the guesses it was searched for,
+	// then the number of guesses each was searched for, then the number of guesses searched for all of them.
+	private long[] searchGuesses(Board board, long[] candidates, List<Integer> guesses, AtomicInteger next, long deadline) {
+		int n = candidates.length;
+		long[] totals = new long[2 * n + 1];
+		DistanceOracle oracle = DistanceOracle.of(board.getSetup());
+		MoveList moves = new MoveList();
+		long[] made = new long[ScotlandYard.DETECTIVES.size()];
+		for (int g = next.getAndIncrement(); g < guesses.size(); g = next.getAndIncrement()) {
+			SearchState state = new SearchState(board, guesses.get(g));
+			for (int i = 0; i < n; i++) {
+				if (System.nanoTime() >= deadline) return totals;
+				state.make(candidates[i]);
+				// The rest of the detectives close in on the guess, one after the other
+				int count = 0;
+				while (true) {
+					state.generateMoves(moves);
+					if (moves.isEmpty() || PackedMove.pieceId(moves.get(0)) == 0) break;
+					made[count] = closest(moves, oracle, state.mrXLocation());
+					state.make(made[count++]);
+				}
+				try {
+					totals[i] += score(state, deadline);
+				} catch (MyAi.OutOfTime e) {
+					// The state is left halfway down the tree, it isn't used again
+					return totals;
+				}
+				totals[n + i]++;
+				while (count > 0) state.unmake(made[--count]);
+				state.unmake(candidates[i]);
+			}
+			totals[2 * n]++;
+		}
+		return totals;
+	}
+
+	// Returns the move of the first detective in the list that ends closest to the location
+	private static long closest(MoveList moves, DistanceOracle oracle, int location) {
+		long best = moves.get(0);
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < moves.size() && PackedMove.pieceId(moves.get(i)) == PackedMove.pieceId(best); i++) {
+			int distance = oracle.distance(PackedMove.destination(moves.get(i)), location);
+			if (distance < bestDistance) {
+				best = moves.get(i);
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	// Returns how far Mr X gets from the state with the detectives' round over. If the detectives still to move
+	// are stuck behind the others the game goes no further and nobody wins, the search scores that by how
+	// close the detectives are as it stands.
+	// Throws OutOfTime if the search isn't done by the System.nanoTime() deadline.
+	int score(SearchState state, long deadline) {
+		var winner = state.getWinner();
+		if (!winner.isEmpty()) return winner.iterator().next().isMrX() ? ESCAPED : CAUGHT;
+		return Math.max(CAUGHT, Math.min(ESCAPED, search.score(state, depth, deadline)));
+	}
+
+	private ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(threads);
+		return pool;
+	}
+}
@@ -0,0 +1,126 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import javax.annotation.Nonnull;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.TransportGraph;
+
+// Hop distances between every pair of nodes of a game graph, so the search never has to run a
+// breadth first search of its own. Built once per graph, one search per source node run in parallel.
+// Besides the plain distances there is a table for every combination of the detective transports,
+// which tells how far a detective really is given the tickets it still holds.
+public final class DistanceOracle {
+
+	// Compiled graphs are cached per game graph, so keying on them caches the oracle per game graph too
+	private static final LoadingCache<TransportGraph, DistanceOracle> CACHE = CacheBuilder.newBuilder()
+			.weakKeys()
+			.build(CacheLoader.from(DistanceOracle::new));
+
+	// Distance between nodes that can't reach each other
+	public static final int UNREACHABLE = -1;
+
+	// Transports detectives can use, every subset of these has its own table
+	public static final int DETECTIVE_TRANSPORTS = TransportGraph.mask(Transport.TAXI)
+			| TransportGraph.mask(Transport.BUS)
+			| TransportGraph.mask(Transport.UNDERGROUND);
+
+	// Distances using only the routes that have one of the transports of a mask
+	public static final class Table {
+		private final int bound;
+		// Row major, bound x bound, the row is the source node
+		private final short[] distances;
+
+		private Table(TransportGraph graph, int transports) {
+			this.bound = graph.nodeBound();
+			this.distances = new short[bound * bound];
+			Arrays.fill(distances, (short) UNREACHABLE);
+			IntStream.range(0, bound).parallel()
+					.filter(graph::contains)
+					.forEach(source -> search(graph, transports, source));
+		}
+
+		// Breadth first search from one source, filling in its row
+		private void search(TransportGraph graph, int transports, int source) {
+			int row = source * bound;
+			int[] queue = new int[bound];
+			distances[row + source] = 0;
+			queue[0] = source;
+			int head = 0;
+			int tail = 1;
+			while (head < tail) {
+				int current = queue[head++];
+				for (int edge = graph.start(current); edge < graph.end(current); edge++) {
+					int adjacent = graph.neighbour(edge);
+					if ((graph.transports(edge) & transports) != 0 && distances[row + adjacent] == UNREACHABLE) {
+						distances[row + adjacent] = (short) (distances[row + current] + 1);
+						queue[tail++] = adjacent;
+					}
+				}
+			}
+		}
+
+		// Returns the number of moves needed to get from source to target
+		public int distance(int source, int target) {
+			return distances[source * bound + target];
+		}
+
+		// Returns the distance from source to the closest of the targets, UNREACHABLE if none can be reached
+		public int nearest(int source, int[] targets) {
+			int row = source * bound;
+			int nearest = UNREACHABLE;
+			for (int target : targets) {
+				int distance = distances[row + target];
+				if (distance != UNREACHABLE && (nearest == UNREACHABLE || distance < nearest)) nearest = distance;
+			}
+			return nearest;
+		}
+	}
+
+	private final Table all;
+	// Indexed by the transport mask, only subsets of DETECTIVE_TRANSPORTS are filled in
+	private final Table[] detectiveTables = new Table[DETECTIVE_TRANSPORTS + 1];
+
+	private DistanceOracle(TransportGraph graph) {
+		this.all = new Table(graph, (1 << Transport.values().length) - 1);
+		for (int transports = 0; transports <= DETECTIVE_TRANSPORTS; transports++) {
+			if ((transports & ~DETECTIVE_TRANSPORTS) == 0) detectiveTables[transports] = new Table(graph, transports);
+		}
+	}
+
+	// Returns the oracle of the given setup's graph, computing it if this is the first request
+	@Nonnull public static DistanceOracle of(@Nonnull GameSetup setup) {
+		return CACHE.getUnchecked(TransportGraph.of(setup));
+	}
+
+	// Returns the number of moves needed to get from source to target, ignoring tickets
+	public int distance(int source, int target) { return all.distance(source, target); }
+
+	// Returns the distance from source to the closest of the targets ignoring tickets,
+	// UNREACHABLE if none can be reached
+	public int nearest(int source, int[] targets) { return all.nearest(source, targets); }
+
+	// Returns the table for a subset of DETECTIVE_TRANSPORTS
+	@Nonnull public Table table(int transports) {
+		if ((transports & ~DETECTIVE_TRANSPORTS) != 0)
+			throw new IllegalArgumentException("Not a set of detective transports: " + transports);
+		return detectiveTables[transports];
+	}
+
+	// Returns the table for the transports a detective still has at least one ticket for.
+	// Only whether a ticket is held counts, not how many are left.
+	@Nonnull public Table forTickets(@Nonnull Board.TicketBoard tickets) {
+		int transports = 0;
+		if (tickets.getCount(Ticket.TAXI) > 0) transports |= TransportGraph.mask(Transport.TAXI);
+		if (tickets.getCount(Ticket.BUS) > 0) transports |= TransportGraph.mask(Transport.BUS);
+		if (tickets.getCount(Ticket.UNDERGROUND) > 0) transports |= TransportGraph.mask(Transport.UNDERGROUND);
+		return detectiveTables[transports];
+	}
+}
@@ -0,0 +1,57 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.TransportGraph;
+
+// Remembers which moves have caused cutoffs in the search, by piece, destination and ticket, so moves like them
+// can be tried early elsewhere in the tree (the history heuristic). A cutoff counts for more the deeper the
+// search below it was, and scores are halved now and then so newer cutoffs count for more than older ones.
+// The table has no locks, threads searching at the same time may lose each other's updates, which only makes
+// the order of the moves a bit worse.
+public final class HistoryTable {
+
+	// Scores are halved when one gets above this, which keeps them within MoveOrdering's bits
+	public static final int MAX_SCORE = 1 << 20;
+
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	private final TransportGraph graph;
+	private final int[] scores;
+
+	public HistoryTable(@Nonnull TransportGraph graph) {
+		this.graph = graph;
+		this.scores = new int[(Detective.values().length + 1) * graph.nodeBound() * TICKETS.length];
+	}
+
+	// Checks whether the table can hold moves on the given graph
+	public boolean isFor(@Nonnull TransportGraph graph) { return this.graph == graph; }
+
+	// A double move counts as a move to its final destination with its second ticket
+	private int index(long move) {
+		Ticket ticket = PackedMove.isDouble(move) ? PackedMove.ticket2(move) : PackedMove.ticket1(move);
+		return (PackedMove.pieceId(move) * graph.nodeBound() + PackedMove.destination(move)) * TICKETS.length
+				+ ticket.ordinal();
+	}
+
+	// Returns the score of the move, between 0 and MAX_SCORE
+	public int score(long move) { return scores[index(move)]; }
+
+	// Records that the move caused a cutoff with the given depth left to search
+	public void reward(long move, int depth) {
+		int index = index(move);
+		int score = scores[index] + depth * depth;
+		scores[index] = Math.min(score, MAX_SCORE);
+		if (score >= MAX_SCORE) age();
+	}
+
+	// Halves every score
+	public void age() {
+		for (int i = 0; i < scores.length; i++) scores[i] >>= 1;
+	}
+
+	public void clear() { Arrays.fill(scores, 0); }
+}
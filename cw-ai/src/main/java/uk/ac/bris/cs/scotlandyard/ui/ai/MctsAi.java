@@ -0,0 +1,234 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.*;
+
+// Plays Mr X with Monte Carlo tree search (UCT). Each playout walks down a tree of the positions tried so far,
+// picking the move with the best upper confidence bound for whoever makes it. It adds the next position to
+// the tree and plays the game out to the end from there, then counts the result in every position on the
+// way. Playouts go all the way to the end of the game, so unlike MyAi's search it sees the last round and
+// the reveal rounds in GameSetup.moves coming.
+// In the tree the detectives move one at a time. In the playouts they mostly head for Mr X, who mostly stays
+// out of their reach. Both sides know where everyone is, so the detectives are stronger than they really are.
+// Threads share one tree (tree parallelisation). A thread counts a visit on every position on its way down
+// before it knows the result, as if the playout was lost (virtual loss), so the other threads spread out
+// over other moves until the result is in.
+public class MctsAi implements Ai, Sides.Declared {
+
+	// How much the upper confidence bound favours moves tried less, sqrt(2) in theory
+	private static final double EXPLORATION = 1.0;
+	// Chance that a piece in a playout makes a random move instead of the one that looks best
+	private static final double RANDOM_MOVE = 0.25;
+	// Random moves Mr X tries in a playout to find one out of the detectives' reach
+	private static final int ESCAPE_TRIES = 4;
+
+	// Playouts per move, 0 to use all of the time there is
+	private final int playouts;
+	private final int threads;
+	private final long seed;
+	private ForkJoinPool pool;
+	private int lastPlayouts;
+
+	public MctsAi() { this(0, Runtime.getRuntime().availableProcessors(), System.nanoTime()); }
+
+	// Creates the ai making at most the given number of playouts per move, 0 for as many as there is time for,
+	// on the given number of threads. Each thread's playouts are random with its own seed made from the given
+	// one. On one thread with a number of playouts the moves are the same for the same seed.
+	public MctsAi(int playouts, int threads, long seed) {
+		if (playouts < 0) throw new IllegalArgumentException("Bad number of playouts: " + playouts);
+		if (threads < 1) throw new IllegalArgumentException("Bad number of threads: " + threads);
+		this.playouts = playouts;
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	@Nonnull @Override public String name() { return "Robot Sophia MCTS"; }
+
+	@Nonnull @Override public Sides sides() { return Sides.MR_X; }
+
+	// Shuts the playout threads down, the ai can still be used after but makes new ones
+	@Override public void onTerminate() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
+	}
+
+	// Returns the number of playouts made for the last move
+	public int lastPlayouts() { return lastPlayouts; }
+
+	// A position in the tree, reached by a move from its parent
+	private static final class Node {
+		private final long move;
+		// Whether the move was Mr X's, the scores are for whoever made it
+		private final boolean mrX;
+		// Null until the node is expanded, then the positions one move on
+		private volatile Node[] children;
+		private final AtomicInteger visits = new AtomicInteger();
+		// Twice the points won through this node, a win being 2 and a draw 1
+		private final AtomicLong points = new AtomicLong();
+
+		private Node(long move, boolean mrX) {
+			this.move = move;
+			this.mrX = mrX;
+		}
+
+		// Returns the upper confidence bound of the node for the one choosing between it and its siblings
+		private double bound(double logParentVisits) {
+			int n = visits.get();
+			if (n == 0) return Double.POSITIVE_INFINITY;
+			return points.get() / (2.0 * n) + EXPLORATION * Math.sqrt(logParentVisits / n);
+		}
+	}
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		var moves = board.getAvailableMoves().asList();
+		if (moves.size() == 1) return moves.get(0);
+		long deadline = System.nanoTime() + MyAi.searchTime(timeoutPair);
+
+		SearchState root = new SearchState(board);
+		Node tree = new Node(PackedMove.NONE, false);
+		expand(tree, root);
+		AtomicInteger started = new AtomicInteger();
+		List<ForkJoinTask<?>> workers = new ArrayList<>();
+		for (int t = 1; t < threads; t++) {
+			Random random = new Random(seed + t);
+			workers.add(pool().submit(() -> search(tree, root, deadline, started, random)));
+		}
+		search(tree, root, deadline, started, new Random(seed));
+		for (ForkJoinTask<?> worker : workers) worker.join();
+		lastPlayouts = tree.visits.get();
+
+		// The most visited move is the one the search trusts most
+		Node best = tree.children[0];
+		for (Node child : tree.children) {
+			if (child.visits.get() > best.visits.get()) best = child;
+		}
+		return PackedMove.toMove(InternedMoves.of(board.getSetup()), best.move);
+	}
+
+	// Makes playouts from the root until the time is up or enough have been started
+	private void search(Node tree, SearchState root, long deadline, AtomicInteger started, Random random) {
+		MoveList moves = new MoveList();
+		DistanceOracle oracle = DistanceOracle.of(root.getSetup());
+		List<Node> path = new ArrayList<>();
+		while (System.nanoTime() < deadline && (playouts == 0 || started.getAndIncrement() < playouts)) {
+			SearchState state = new SearchState(root);
+			path.clear();
+			Node node = tree;
+			node.visits.incrementAndGet();
+			path.add(node);
+			// Down the tree as far as it goes
+			while (node.children != null && node.children.length > 0) {
+				node = select(node);
+				node.visits.incrementAndGet();
+				path.add(node);
+				state.make(node.move);
+			}
+			// One more position, unless the game is over
+			if (node.visits.get() > 1 && expand(node, state) > 0) {
+				node = node.children[random.nextInt(node.children.length)];
+				node.visits.incrementAndGet();
+				path.add(node);
+				state.make(node.move);
+			}
+			int points = playout(state, moves, oracle, random);
+			for (Node visited : path) visited.points.addAndGet(visited.mrX ? points : 2 - points);
+		}
+	}
+
+	// Returns the child with the best upper confidence bound
+	private static Node select(Node node) {
+		double logVisits = Math.log(Math.max(1, node.visits.get()));
+		Node best = null;
+		double bestBound = Double.NEGATIVE_INFINITY;
+		for (Node child : node.children) {
+			double bound = child.bound(logVisits);
+			if (bound > bestBound) {
+				best = child;
+				bestBound = bound;
+			}
+		}
+		return best;
+	}
+
+	// Adds the positions one move on from the node's, if no other thread has, and returns how many there are.
+	// Of the detectives only the first one still to move gets children, the others move further down.
+	private static int expand(Node node, SearchState state) {
+		Node[] children = node.children;
+		if (children != null) return children.length;
+		synchronized (node) {
+			if (node.children != null) return node.children.length;
+			MoveList moves = new MoveList();
+			state.generateMoves(moves);
+			List<Node> added = new ArrayList<>();
+			for (int i = 0; i < moves.size(); i++) {
+				long move = moves.get(i);
+				if (PackedMove.pieceId(move) != PackedMove.pieceId(moves.get(0))) break;
+				added.add(new Node(move, PackedMove.pieceId(move) == 0));
+			}
+			node.children = added.toArray(new Node[0]);
+			return node.children.length;
+		}
+	}
+
+	// Plays the game out from the state and returns Mr X's points, 2 for a win, 0 for a loss and 1 if the game
+	// got stuck with nobody winning
+	private static int playout(SearchState state, MoveList moves, DistanceOracle oracle, Random random) {
+		while (true) {
+			state.generateMoves(moves);
+			if (moves.isEmpty()) break;
+			state.make(pickPlayoutMove(state, moves, oracle, random));
+		}
+		var winner = state.getWinner();
+		if (winner.isEmpty()) return 1;
+		return winner.iterator().next().isMrX() ? 2 : 0;
+	}
+
+	// Returns a quick guess at a good move: a detective heads for Mr X along a move of the first detective
+	// still to move, Mr X picks a random single move that doesn't end next to a detective if he can find one.
+	// Double moves are generated after the single ones and far outnumber them, picked at random Mr X would
+	// spend his double tickets in the first few rounds.
+	private static long pickPlayoutMove(SearchState state, MoveList moves, DistanceOracle oracle, Random random) {
+		if (random.nextDouble() < RANDOM_MOVE) return moves.get(random.nextInt(moves.size()));
+		if (PackedMove.pieceId(moves.get(0)) != 0) {
+			long best = moves.get(0);
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < moves.size() && PackedMove.pieceId(moves.get(i)) == PackedMove.pieceId(best); i++) {
+				int distance = oracle.distance(PackedMove.destination(moves.get(i)), state.mrXLocation());
+				if (distance < bestDistance) {
+					best = moves.get(i);
+					bestDistance = distance;
+				}
+			}
+			return best;
+		}
+		int singles = 0;
+		while (singles < moves.size() && !PackedMove.isDouble(moves.get(singles))) singles++;
+		if (singles == 0) singles = moves.size();
+		long move = moves.get(random.nextInt(singles));
+		for (int tries = 1; tries < ESCAPE_TRIES && nearestDetective(state, oracle, PackedMove.destination(move)) <= 1; tries++)
+			move = moves.get(random.nextInt(singles));
+		return move;
+	}
+
+	// Returns the number of moves the closest detective needs to reach the location, ignoring tickets
+	private static int nearestDetective(SearchState state, DistanceOracle oracle, int location) {
+		int nearest = Integer.MAX_VALUE;
+		for (int i = 1; i < state.playerCount(); i++) nearest = Math.min(nearest, oracle.distance(state.location(i), location));
+		return nearest;
+	}
+
+	private ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(threads);
+		return pool;
+	}
+}
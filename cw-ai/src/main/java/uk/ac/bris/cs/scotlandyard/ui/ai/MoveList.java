@@ -0,0 +1,74 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+
+// A growable list of packed moves (see PackedMove) meant to be cleared and filled again, so generating moves
+// for a position allocates nothing once the buffer is big enough.
+public final class MoveList {
+
+	// Returned by nextBest once every move has been
+	public static final int DONE = -1;
+
+	private long[] moves;
+	private int size;
+	// What the moves are ordered by for nextBest, Integer.MIN_VALUE once a move has been returned
+	private int[] scores;
+
+	public MoveList() { this(64); }
+
+	public MoveList(int capacity) {
+		this.moves = new long[Math.max(1, capacity)];
+		this.scores = new int[moves.length];
+	}
+
+	public void add(long move) {
+		if (size == moves.length) {
+			moves = Arrays.copyOf(moves, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		moves[size++] = move;
+	}
+
+	public long get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		return moves[index];
+	}
+
+	public int size() { return size; }
+
+	public boolean isEmpty() { return size == 0; }
+
+	public void clear() { size = 0; }
+
+	// Returns the index of the move, or -1 if it isn't in the list
+	public int indexOf(long move) {
+		for (int i = 0; i < size; i++) {
+			if (moves[i] == move) return i;
+		}
+		return -1;
+	}
+
+	// Sets the score of the move at the index, nextBest returns higher scored moves first. Scores must be more
+	// than Integer.MIN_VALUE.
+	public void setScore(int index, int score) {
+		if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+		scores[index] = score;
+	}
+
+	// Returns the index of the highest scored move not returned since the scores were set, or DONE. The moves
+	// stay where they are, so indices still point at the same move as when it was generated.
+	// Each call goes over every move, so taking all n of them is a selection sort, O(n^2). A node cut off after
+	// its first move only pays for one pass.
+	public int nextBest() {
+		int best = DONE;
+		int bestScore = Integer.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			if (scores[i] > bestScore) {
+				best = i;
+				bestScore = scores[i];
+			}
+		}
+		if (best != DONE) scores[best] = Integer.MIN_VALUE;
+		return best;
+	}
+}
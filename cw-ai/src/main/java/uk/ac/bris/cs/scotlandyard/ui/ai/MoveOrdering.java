@@ -0,0 +1,86 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+// Decides the order a search tries the moves of a position in, so alpha-beta finds its cutoffs early.
+// First comes the move the transposition table has as the best, then the two killer moves of the ply (the
+// last moves to cause a cutoff at the same depth elsewhere in the tree), then the rest by their history
+// score, see HistoryTable. Ties are broken by distance, by moves needed ignoring tickets: Mr X's moves
+// that end furthest from the nearest detective, and detectives' moves that end nearest to Mr X, go first.
+// The killers belong to one search thread, every thread has a MoveOrdering of its own sharing the history.
+public final class MoveOrdering {
+
+	private static final int TABLE_MOVE = 1 << 30;
+	private static final int FIRST_KILLER = 1 << 29;
+	private static final int SECOND_KILLER = 1 << 28;
+	// Distances take the low bits under the history score, further than this counts as this far, and so does
+	// no way there at all
+	private static final int DISTANCE_BITS = 4;
+	static final int MAX_DISTANCE = (1 << DISTANCE_BITS) - 1;
+
+	private final HistoryTable history;
+	private final DistanceOracle oracle;
+	// Two per ply, indexed by SearchState.depth, the first being the newest
+	private long[] killers = new long[32];
+
+	public MoveOrdering(@Nonnull HistoryTable history, @Nonnull DistanceOracle oracle) {
+		this.history = history;
+		this.oracle = oracle;
+		Arrays.fill(killers, PackedMove.NONE);
+	}
+
+	// Scores the moves generated for the state's position, for MoveList.nextBest. The table move is the index
+	// of the transposition table's best move, or TranspositionTable.NO_MOVE.
+	public void score(@Nonnull MoveList moves, int tableMove, @Nonnull SearchState state) {
+		int ply = state.depth();
+		growTo(ply);
+		long firstKiller = killers[2 * ply];
+		long secondKiller = killers[2 * ply + 1];
+		for (int i = 0; i < moves.size(); i++) {
+			long move = moves.get(i);
+			int score;
+			if (i == tableMove) score = TABLE_MOVE;
+			else if (move == firstKiller) score = FIRST_KILLER;
+			else if (move == secondKiller) score = SECOND_KILLER;
+			else score = history.score(move) << DISTANCE_BITS | distanceScore(move, state);
+			moves.setScore(i, score);
+		}
+	}
+
+	// Returns how good the move looks by distance alone, higher is better for whoever makes it. Always between
+	// 0 and MAX_DISTANCE so it stays out of the history score's bits.
+	int distanceScore(long move, SearchState state) {
+		int destination = PackedMove.destination(move);
+		if (PackedMove.pieceId(move) != 0)
+			return MAX_DISTANCE - capped(oracle.distance(destination, state.mrXLocation()));
+		int nearest = MAX_DISTANCE;
+		for (int i = 1; i < state.playerCount(); i++)
+			nearest = Math.min(nearest, capped(oracle.distance(state.location(i), destination)));
+		return nearest;
+	}
+
+	// Returns the distance as far as the ordering counts, MAX_DISTANCE if there is no way there
+	private static int capped(int distance) {
+		if (distance == DistanceOracle.UNREACHABLE) return MAX_DISTANCE;
+		return Math.max(0, Math.min(distance, MAX_DISTANCE));
+	}
+
+	// Records that the move caused a cutoff in the state's position with the given depth left to search
+	public void cutoff(long move, int depth, @Nonnull SearchState state) {
+		int ply = state.depth();
+		growTo(ply);
+		if (killers[2 * ply] != move) {
+			killers[2 * ply + 1] = killers[2 * ply];
+			killers[2 * ply] = move;
+		}
+		history.reward(move, depth);
+	}
+
+	private void growTo(int ply) {
+		if (2 * ply + 1 < killers.length) return;
+		int length = killers.length;
+		killers = Arrays.copyOf(killers, Math.max(2 * ply + 2, length * 2));
+		Arrays.fill(killers, length, killers.length, PackedMove.NONE);
+	}
+}
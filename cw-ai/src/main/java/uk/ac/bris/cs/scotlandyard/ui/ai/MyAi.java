@@ -1,195 +1,232 @@
 package uk.ac.bris.cs.scotlandyard.ui.ai;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.graph.ImmutableValueGraph;
 import io.atlassian.fugue.Pair;
 import uk.ac.bris.cs.scotlandyard.model.*;
 import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
 
 
-public class MyAi implements Ai {
+public class MyAi implements Ai, Sides.Declared {
+
+	// Memory given to the transposition table unless asked otherwise
+	private static final long DEFAULT_TABLE_BYTES = 16L << 20;
+
+	// Results of earlier searches, kept between moves since the next search goes over much of the same ground
+	private final TranspositionTable table;
+	// Breaks ties between equally good moves
+	private final Random random;
+	// Number of threads searching and how they share the work, the pool is made on the first search that needs it
+	private final int threads;
+	private final Parallelism parallelism;
+	private ForkJoinPool pool;
+	// Set when pickMove has its move, which stops any helper threads still searching
+	private volatile boolean stopping;
+
+	// How more than one thread searches
+	public enum Parallelism {
+		// The moves at the root are shared out between the threads
+		ROOT_SPLIT,
+		// Every thread searches all of the root, the helpers only fill the table for the main thread (Lazy SMP)
+		LAZY_SMP
+	}
 
-	// Dijkstra algorithm to find the distance from mrX location to a given detective location
-	public static Integer dijkstra(ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph,
-								   Integer source, Integer target) {
-		Map<Integer, Integer> distance = new HashMap<>();
-		Queue<Integer> pq = new LinkedList<>();
-		Set<Integer> visited = new HashSet<>();
+	// Share of the time budget kept back for everything around the search, at least MIN_MARGIN_MILLIS of it
+	private static final int MARGIN_PERCENT = 10;
+	private static final long MIN_MARGIN_MILLIS = 50;
+	// Positions searched for the last move, by all threads, and how many of them each search that finished took
+	private final LongAdder nodes = new LongAdder();
+	private final List<Long> nodesByDepth = new ArrayList<>();
+	// Which moves have caused cutoffs, shared by all threads and kept between moves. Made for the graph of the
+	// last board searched.
+	private HistoryTable history;
+	// Depth of the last search that finished in time
+	private int lastDepth;
+
+	// Thrown from deep down in the search when the time is up, it unwinds all the way to pickMove, or to
+	// whoever called score
+	static final class OutOfTime extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private OutOfTime() { super(null, null, false, false); }
+	}
+	private static final OutOfTime OUT_OF_TIME = new OutOfTime();
 
-		for (Integer node : graph.nodes()) {
-			distance.put(node, Integer.MAX_VALUE);
-		}
-		distance.put(source, 0);
+	// Scores of positions where the game is over, better and worse for Mr X than any distance. Well inside the
+	// range of int so a score one below them (see tieAlpha) can't wrap round.
+	static final int MRX_WON = 1 << 20;
+	static final int MRX_LOST = -MRX_WON;
 
-		pq.add(source);
+	public MyAi() { this(DEFAULT_TABLE_BYTES); }
 
-		while (!pq.isEmpty()) {
-			Integer current = pq.poll();
-			if (!visited.contains(current)) {
-				if (current.equals(target)) {
-					return distance.get(target);
-				}
-				visited.add(current);
-				for (Integer adjacent : graph.adjacentNodes(current)) {
-					int newDistance = distance.get(current) + 1;
-					if (newDistance < distance.get(adjacent)) {
-						distance.put(adjacent, newDistance);
-						pq.add(adjacent);
-					}
-				}
-			}
-		}
-		// Target can't be reached
-		return -1;
+	// Creates the ai with a transposition table of at most the given size in bytes, searching on all cores
+	public MyAi(long tableBytes) { this(tableBytes, new Random(), Runtime.getRuntime().availableProcessors()); }
+
+	// Creates the ai with the given table size whose choices are repeatable for the same seed. It searches on one
+	// thread, with more the result depends on their timing.
+	public MyAi(long tableBytes, long seed) { this(tableBytes, new Random(seed), 1); }
+
+	// Creates the ai with the given table size, source of tie breaks and number of threads to search on
+	public MyAi(long tableBytes, Random random, int threads) {
+		this(tableBytes, random, threads, Parallelism.ROOT_SPLIT);
 	}
-	// Modified dijkstra algorithm that stops when it finds the first closest detective
-	public static Integer dijkstraFirstDetective(Board.GameState gameState,
-												 Integer source, List<Detective> detectives) {
-		Map<Integer, Integer> distance = new HashMap<>();
-		Queue<Integer> pq = new LinkedList<>();
-		Set<Integer> visited = new HashSet<>();
-		ImmutableValueGraph<Integer, ImmutableSet<ScotlandYard.Transport>> graph = gameState.getSetup().graph;
-		Set<Integer> targets = new HashSet<>();
-		for (Detective detective : detectives) {
-			targets.add(gameState.getDetectiveLocation(detective).get());
-		}
 
-		for (Integer node : graph.nodes()) {
-			distance.put(node, Integer.MAX_VALUE);
-		}
-		distance.put(source, 0);
-		pq.add(source);
-
-		while (!pq.isEmpty()) {
-			Integer current = pq.poll();
-			if (!visited.contains(current)) {
-				if (targets.contains(current)) {
-					return distance.get(current);
-				}
-				visited.add(current);
-				for (Integer adjacent : graph.adjacentNodes(current)) {
-					int newDistance = distance.get(current) + 1;
-					if (newDistance < distance.get(adjacent)) {
-						distance.put(adjacent, newDistance);
-						pq.add(adjacent);
-					}
-				}
-			}
-		}
-		// Target can't be reached
-		return -1;
+	// Creates the ai with the given table size, source of tie breaks, number of threads to search on and way
+	// of sharing the search between them
+	public MyAi(long tableBytes, Random random, int threads, Parallelism parallelism) {
+		if (threads < 1) throw new IllegalArgumentException("Bad number of threads: " + threads);
+		this.table = new TranspositionTable(tableBytes);
+		this.random = random;
+		this.threads = threads;
+		this.parallelism = Objects.requireNonNull(parallelism);
+	}
+
+	// Shuts the search threads down, the ai can still be used after but makes new ones
+	@Override public void onTerminate() {
+		if (pool != null) pool.shutdownNow();
+		pool = null;
 	}
 
+	// Returns the transposition table, for its statistics
+	public TranspositionTable transpositionTable() { return table; }
+
+	// Returns the depth of the deepest search that finished in time for the last move
+	public int lastDepth() { return lastDepth; }
+
+	// Returns the number of positions searched for the last move
+	public long lastNodes() { return nodes.sum(); }
+
+	// Returns the number of positions each search for the last move took, the first being the search of depth 1,
+	// up to the last one that finished
+	public List<Long> lastNodesByDepth() { return List.copyOf(nodesByDepth); }
+
 	// Minimax algorithm to pick the best board score for Mrx/Detectives
-	public static int minimax(int mrXLocation , int depth, int alpha, int beta, boolean isMax, Board.GameState gameState) {
+	// Moves are made on the search state and taken back before returning, so it is left as it was given.
+	// The ordering must belong to the thread calling. Throws OutOfTime once the System.nanoTime() deadline has
+	// passed, leaving the state halfway down the tree.
+	public int minimax(int depth, int alpha, int beta, boolean isMax, SearchState state, MoveOrdering ordering,
+			long deadline) {
+		nodes.increment();
 		if (depth == 0) {
-			return getScore(mrXLocation, detectivePieces(gameState), gameState);
+			return getScore(state.mrXLocation(), state);
+		}
+		if (stopping || System.nanoTime() > deadline) throw OUT_OF_TIME;
+		// Uses what an earlier search found out about this position, if it was searched deep enough
+		int alphaOriginal = alpha;
+		int betaOriginal = beta;
+		long entry = table.probe(state.hash());
+		int bestIndex = TranspositionTable.NO_MOVE;
+		if (entry != TranspositionTable.MISS) {
+			bestIndex = TranspositionTable.move(entry);
+			if (TranspositionTable.depth(entry) >= depth) {
+				int score = TranspositionTable.score(entry);
+				switch (TranspositionTable.bound(entry)) {
+					case TranspositionTable.EXACT: return score;
+					case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+					case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+				}
+				if (beta <= alpha) return score;
+			}
 		}
-		Board.GameState newGameState;
+		int bestValue;
+		int best = TranspositionTable.NO_MOVE;
 		if (isMax) {
-			int bestValue = Integer.MIN_VALUE;
-			for (Move move : gameState.getAvailableMoves()) {
-				int newValue = minimax(getMoveDestination(move), depth - 1, alpha, beta, false, gameState.advance(move));
-				bestValue = Math.max(newValue, bestValue);
+			bestValue = Integer.MIN_VALUE;
+			MoveList moves = state.availableMoves();
+			if (moves.isEmpty()) return gameOverScore(state);
+			ordering.score(moves, bestIndex, state);
+			for (int i = moves.nextBest(); i != MoveList.DONE; i = moves.nextBest()) {
+				long move = moves.get(i);
+				state.make(move);
+				int newValue = minimax(depth - 1, alpha, beta, false, state, ordering, deadline);
+				state.unmake(move);
+				if (newValue > bestValue) {
+					bestValue = newValue;
+					best = i;
+				}
 				alpha = Math.max(alpha, bestValue);
 				if (beta <= alpha) {
+					ordering.cutoff(move, depth, state);
 					break; // Beta cutoff
 				}
 			}
-			return bestValue;
 		} else {
-			List<List<Move>> detectiveMovesCombinations = detectiveMoveCombination(gameState, mrXLocation);
-			int bestValue = Integer.MAX_VALUE;
-			for (List<Move> moves : detectiveMovesCombinations) {
-				newGameState = gameState;
-				// Updates the gamestate for mrX's turn after all detectives do their move from the combination
-				for (Move move : moves) {
-					newGameState = newGameState.advance(move);
+			// Best-Reply Search: only one of the detectives moves, whichever one does Mr X the most harm, and the
+			// others pass. The detectives' turn has as many replies as they have moves between them rather
+			// than every combination of them.
+			bestValue = Integer.MAX_VALUE;
+			MoveList moves = state.availableMoves();
+			if (moves.isEmpty()) return gameOverScore(state);
+			DistanceOracle oracle = DistanceOracle.of(state.getSetup());
+			int mrXLocation = state.mrXLocation();
+			// Moves that take a detective further from Mr X are left out, unless every move does
+			boolean anyCloser = false;
+			for (int i = 0; i < moves.size() && !anyCloser; i++) anyCloser = !movesAway(oracle, mrXLocation, moves.get(i));
+			ordering.score(moves, bestIndex, state);
+			for (int i = moves.nextBest(); i != MoveList.DONE; i = moves.nextBest()) {
+				long move = moves.get(i);
+				if (anyCloser && movesAway(oracle, mrXLocation, move)) continue;
+				state.make(move);
+				state.pass();
+				int newValue = minimax(depth - 1, alpha, beta, true, state, ordering, deadline);
+				state.unpass();
+				state.unmake(move);
+				if (newValue < bestValue) {
+					bestValue = newValue;
+					best = i;
 				}
-				int newValue = minimax(mrXLocation, depth - 1, alpha, beta, true, newGameState);
-				bestValue = Math.min(newValue, bestValue);
+				beta = Math.min(beta, bestValue);
 				if (beta <= alpha) {
+					ordering.cutoff(move, depth, state);
 					break; // Alpha cutoff
 				}
 			}
-			return bestValue;
 		}
+		int bound = bestValue <= alphaOriginal ? TranspositionTable.UPPER
+				: bestValue >= betaOriginal ? TranspositionTable.LOWER
+				: TranspositionTable.EXACT;
+		table.store(state.hash(), depth, bound, bestValue, best);
+		return bestValue;
 	}
 
-	// Creates list of combinations of detective moves
-	private static List<List<Move>> detectiveMoveCombination(Board.GameState gameState, int mrXLocation){
-		ImmutableSet<Move> moves = gameState.getAvailableMoves();
-		Piece detective = null;
-		boolean last = false;
-		List<List<Move>> combinedMoves = new ArrayList<>();
-		int source = 0;
-		for (Move move : moves){
-			// Allows only 2 detective move combinations since all of them are going to be the worst outcome for mrX
-			if (combinedMoves.size() < 2){
-				if (detective == null) {
-					detective = move.commencedBy();
-					Piece finalDetective = detective;
-					last = moves.stream().allMatch(move1 -> move1.commencedBy() == finalDetective);
-					source = dijkstra(gameState.getSetup().graph, mrXLocation, getMoveSource(move));
-				}
-				if (move.commencedBy() == detective) {
-					// Checks if move is going to get detective closer to mrX
-					if (!(dijkstra(gameState.getSetup().graph, mrXLocation, getMoveDestination(move)) > source)) {
-						Board.GameState advancedGameState = gameState.advance(move);
-						// If it's the last detective in the list - we create a new combination
-						if (last || !advancedGameState.getWinner().isEmpty()) {
-							List<Move> newCombination = new ArrayList<>();
-							newCombination.add(move);
-							combinedMoves.add(newCombination);
-						} else {
-							// Add a move to combination of other detective moves
-							List<List<Move>> newCombination = detectiveMoveCombination(gameState.advance(move), mrXLocation);
-							for (List<Move> combinations : newCombination) {
-								combinations.add(0, move);
-								combinedMoves.add(combinations);
-							}
-						}
-					}
-				}
-			}
-		}
-		return combinedMoves;
-	}
-	// Returns the board score
-	private static int getScore(int mrXLocation, List<Detective> detectives, Board.GameState gameState) {
-		return dijkstraFirstDetective(gameState, mrXLocation, detectives);
+	// Returns the score of a position where no one can move. Mr X either won, such as by filling his travel log,
+	// or was caught or has nowhere to go. With no winner the detectives still to move are stuck behind the
+	// others, the game goes no further and the position is scored as it stands.
+	private static int gameOverScore(SearchState state) {
+		var winner = state.getWinner();
+		if (winner.isEmpty()) return getScore(state.mrXLocation(), state);
+		return winner.iterator().next().isMrX() ? MRX_WON : MRX_LOST;
 	}
 
-	// Returns list of detectives (pieces)
-	private static List<Detective> detectivePieces(Board.GameState gameState){
-		ImmutableSet<Piece> players = gameState.getPlayers();
-		// returns list of detective pieces
-        return players.stream()
-				.filter(Piece::isDetective)
-				.map(piece -> (Detective) piece)
-				.toList();
+	// Checks if the move takes the detective further away from Mr X, by moves needed ignoring tickets
+	private static boolean movesAway(DistanceOracle oracle, int mrXLocation, long move) {
+		return oracle.distance(mrXLocation, PackedMove.destination(move)) > oracle.distance(mrXLocation, PackedMove.source(move));
 	}
 
-	// Returns the location from which the move was made
-	private static int getMoveSource(Move move){
-		return move.accept(new Move.Visitor<>() {
-            @Override
-            public Integer visit(Move.SingleMove move) {
-                return move.source();
-            }
+	// Returns the board score, the distance from mrX to the closest detective
+	private static int getScore(int mrXLocation, Board board) {
+		return nearestDetective(mrXLocation, board);
+	}
 
-            @Override
-            public Integer visit(Move.DoubleMove move) {
-                return move.source();
-            }
-        });
+	// Returns the number of moves the closest detective needs to reach the location with the tickets it has left.
+	// If no detective can get there at all it is further away than any reachable node.
+	private static int nearestDetective(int location, Board board){
+		DistanceOracle oracle = DistanceOracle.of(board.getSetup());
+		int nearest = TransportGraph.of(board.getSetup()).nodeCount();
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isMrX()) continue;
+			int detectiveLocation = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			int distance = oracle.forTickets(board.getPlayerTickets(piece).orElseThrow()).distance(detectiveLocation, location);
+			if (distance != DistanceOracle.UNREACHABLE) nearest = Math.min(nearest, distance);
+		}
+		return nearest;
 	}
 
 	// Returns the ticket/s used for the move made
@@ -241,74 +278,88 @@ public class MyAi implements Ai {
 
 	@Nonnull @Override public String name() { return "Robot Sophia"; }
 
+	// The search needs to know where Mr X is, which only he does
+	@Nonnull @Override public Sides sides() { return Sides.MR_X; }
+
 	// Picks the best move for MrX to take
 	@Nonnull @Override public Move pickMove(
 			@Nonnull Board board,
 			Pair<Long, TimeUnit> timeoutPair) {
-		var moves = board.getAvailableMoves().asList();
-		int depth = 3;
-
-		List<Player> allDetectives = new ArrayList<>();
-		Set<Piece> players = new HashSet<>(board.getPlayers());
-		Optional<Player> mrX = Optional.empty();
-
-		// Creates a game state for the current board to them use it for advance method
-		for (Piece player : players){
-			Optional<Board.TicketBoard> tickets = board.getPlayerTickets(player);
-			Map<ScotlandYard.Ticket, Integer> specificTicket = new HashMap<>();
-			for (ScotlandYard.Ticket ticket : ScotlandYard.Ticket.values()) {
-				specificTicket.put(ticket, tickets.get().getCount(ticket));
-			}
-			ImmutableMap<ScotlandYard.Ticket, Integer> immutableSpecificTicket = ImmutableMap.<ScotlandYard.Ticket, Integer>builder()
-					.putAll(specificTicket)
-					.build();
-			if (player.isDetective()){
-				Optional<Integer> detectiveLocation = board.getDetectiveLocation((Detective)player);
-				Player newPlayer = new Player(player, immutableSpecificTicket, detectiveLocation.get());
-				allDetectives.add(newPlayer);
-			} else {
-				int mrXLocation = moves.stream().findFirst().get().source();
-				Player newPlayer = new Player(player, immutableSpecificTicket, mrXLocation);
-				mrX = Optional.of(newPlayer);
-			}
-		}
-
-		ImmutableList<Player> detectives = ImmutableList.copyOf(allDetectives);
-		Board.GameState gameState = new MyGameStateFactory().build(board.getSetup(), mrX.get(), detectives);
-		int bestScore = Integer.MIN_VALUE;
-		List<Move> bestMoves = new ArrayList<>();
-		int alpha = Integer.MIN_VALUE;
-		int beta = Integer.MAX_VALUE;
+		return pickMove(board, System.nanoTime() + searchTime(timeoutPair), Integer.MAX_VALUE);
+	}
 
-		// Only includes double moves if the closest detective is 2 or less moves away.
-		Set<Move> mrXMoves = new HashSet<>();
-		if ((dijkstraFirstDetective(gameState, mrX.get().location(), detectivePieces(gameState)) > 2)
+	// Picks the best move for MrX to take searching no deeper than the given depth, and stopping at the given
+	// System.nanoTime() deadline
+	@Nonnull public Move pickMove(@Nonnull Board board, long deadline, int depthLimit) {
+		var moves = board.getAvailableMoves().asList();
+		if (moves.size() == 1) return moves.get(0);
+		nodes.reset();
+		nodesByDepth.clear();
+
+		// Creates a search state for the current board to make the moves on
+		SearchState state = new SearchState(board);
+		table.newSearch();
+		historyFor(state).age();
+		MoveOrdering ordering = newOrdering(state);
+
+		// Only includes double moves if the closest detective is 2 or less moves away,
+		// or if every single move ends next to a detective.
+		NodeSet threats = state.detectiveThreats();
+		Set<Move> mrXMoves = new LinkedHashSet<>();
+		if ((nearestDetective(state.mrXLocation(), state) > 2)
 				&& (moves.stream().anyMatch(move -> checkIfDouble(move) == 2))
-				&& (moves.stream().filter(move -> checkIfDouble(move) == 1).anyMatch(move -> dijkstraFirstDetective(gameState, getMoveDestination(move), detectivePieces(gameState)) >= 2))) {
+				&& (moves.stream().filter(move -> checkIfDouble(move) == 1).anyMatch(move -> !threats.contains(getMoveDestination(move))))) {
 			for (Move move : moves) {
 				if (checkIfDouble(move) == 1){
 					mrXMoves.add(move);
 				}
 			}
-		} else {mrXMoves = new HashSet<>(moves); }
-		// Finds the best scored moves for MrX to take
-		// Adds all the best moves to a list
-		for (Move move : mrXMoves) {
-			int mrXDestination = getMoveDestination(move);
-			int newScore = minimax(mrXDestination, depth, alpha, beta, false, gameState.advance(move));
-			alpha = Math.max(alpha, newScore);
-			// Adds to the list if the new score is more optimal than or the same as the current score
-			if (newScore > bestScore) {
-				bestMoves = new ArrayList<>();
-				bestScore = newScore;
-				bestMoves.add(move);
+		} else {mrXMoves = new LinkedHashSet<>(moves); }
+
+		// Searches one level deeper each time round until the time is up, the best moves are the ones found
+		// by the last search that finished. Each search goes through the moves in the order the one before
+		// it ranked them, and further down the table has the best replies it found.
+		List<Move> order = new ArrayList<>(mrXMoves);
+		List<Move> bestMoves = new ArrayList<>();
+		// Two levels per round, there is nothing to find past the end of the game
+		int maxDepth = Math.min(depthLimit, 2 * (board.getSetup().moves.size() - board.getMrXTravelLog().size()));
+		lastDepth = 0;
+		List<ForkJoinTask<?>> helpers = parallelism == Parallelism.LAZY_SMP
+				? startHelpers(order, state, maxDepth, deadline)
+				: List.of();
+		try {
+			for (int depth = 1; depth <= maxDepth; depth++) {
+				long iterationStart = System.nanoTime();
+				long iterationNodes = nodes.sum();
+				Map<Move, Integer> scores = new HashMap<>();
+				try {
+					bestMoves = searchRoot(order, depth, state, scores, ordering, deadline);
+				} catch (OutOfTime e) {
+					// The state is left halfway down the tree, it isn't used again
+					break;
+				}
+				lastDepth = depth;
+				nodesByDepth.add(nodes.sum() - iterationNodes);
+				order.sort(Comparator.comparing(scores::get).reversed());
+				// The next search takes longer than this one did, don't start it if it can't finish
+				long now = System.nanoTime();
+				if (now - iterationStart > deadline - now) break;
 			}
-			else if (newScore == bestScore) {
-				bestMoves.add(move);
+		} finally {
+			// The helpers stop at their next position, they must be done before the next move's search starts
+			stopping = true;
+			try {
+				for (ForkJoinTask<?> helper : helpers) helper.join();
+			} finally {
+				stopping = false;
 			}
 		}
 
 		if (!bestMoves.isEmpty()) {
+			// The search's order of the moves can depend on how the threads were timed, the board's doesn't, so the
+			// same random picks the same move
+			Set<Move> best = new HashSet<>(bestMoves);
+			bestMoves = mrXMoves.stream().filter(best::contains).toList();
 			// Checks if it's the move after reveal move then makes MrX more likely to take a secret move
 			if (!board.getMrXTravelLog().isEmpty()
 					&& board.getSetup().moves.get(board.getMrXTravelLog().size()-1)
@@ -317,10 +368,158 @@ public class MyAi implements Ai {
 			} else if (!bestMoves.stream().allMatch(move -> getMoveTicket(move).equals(ScotlandYard.Ticket.SECRET))) {
 				bestMoves = bestMoves.stream().filter(move -> !getMoveTicket(move).equals(ScotlandYard.Ticket.SECRET)).toList();
 			}
-            return bestMoves.get(new Random().nextInt(bestMoves.size()));
+            return bestMoves.get(random.nextInt(bestMoves.size()));
+
+		}
+
+		else { return moves.get(random.nextInt(moves.size())); }
+	}
+
+	// Returns how long the search may take out of the given time for the move, keeping a safety margin back
+	static long searchTime(Pair<Long, TimeUnit> timeoutPair) {
+		long budget = timeoutPair.right().toNanos(timeoutPair.left());
+		long margin = Math.max(budget / 100 * MARGIN_PERCENT, TimeUnit.MILLISECONDS.toNanos(MIN_MARGIN_MILLIS));
+		return Math.max(budget - margin, budget / 2);
+	}
+
+	// Finds the best scored moves for MrX to take, searching each of them to the given depth in the given order
+	// and putting their scores in the map. Adds all the best moves to a list.
+	private List<Move> searchRoot(List<Move> order, int depth, SearchState state, Map<Move, Integer> scores,
+			MoveOrdering ordering, long deadline) {
+		int[] newScores = parallelism == Parallelism.ROOT_SPLIT && threads > 1 && order.size() > 1
+				? parallelScores(order, depth, state, ordering, deadline)
+				: sequentialScores(order, depth, state, ordering, deadline);
+		int bestScore = Integer.MIN_VALUE;
+		List<Move> bestMoves = new ArrayList<>();
+		for (int i = 0; i < order.size(); i++) {
+			Move move = order.get(i);
+			int newScore = newScores[i];
+			scores.put(move, newScore);
+			// Adds to the list if the new score is more optimal than or the same as the current score. Scores below
+			// the best are only bounds, but a score equal to the best is exact, so moves that tie really do.
+			if (newScore > bestScore) {
+				bestMoves = new ArrayList<>();
+				bestScore = newScore;
+				bestMoves.add(move);
+			}
+			else if (newScore == bestScore) {
+				bestMoves.add(move);
+			}
+		}
+		return bestMoves;
+	}
+
+	// Returns the scores of the moves searched one after the other, each with the best score so far as alpha.
+	// See tieAlpha for which scores are exact.
+	private int[] sequentialScores(List<Move> order, int depth, SearchState state, MoveOrdering ordering,
+			long deadline) {
+		int[] newScores = new int[order.size()];
+		int alpha = Integer.MIN_VALUE;
+		for (int i = 0; i < order.size(); i++) {
+			Move move = order.get(i);
+			state.make(move);
+			newScores[i] = minimax(depth, tieAlpha(alpha), Integer.MAX_VALUE, false, state, ordering, deadline);
+			state.unmake(move);
+			alpha = Math.max(alpha, newScores[i]);
+		}
+		return newScores;
+	}
+
+	// Returns the alpha to search a root move with when the best score so far is the given one. A move that
+	// can't beat alpha only gets a bound no higher than alpha back, not its score, so searched with the best
+	// score as alpha a worse move could come back with the best score and be taken as tied with the best move.
+	// One below it, a move that comes back with the best score really has it and a worse one comes back lower.
+	private static int tieAlpha(int bestScore) {
+		return bestScore == Integer.MIN_VALUE ? bestScore : bestScore - 1;
+	}
 
+	// Returns the same scores as sequentialScores, with the moves after the first searched side by side on the
+	// pool. The first move, the best one of the last iteration, is searched on its own first to give the others
+	// a good alpha. They share it through an atomic and raise it as they find better. Each of them searches a
+	// copy of the state and with killer moves of its own, the tables are shared.
+	// The scores of moves worse than the best depend on the order the threads finish in, but as each move is
+	// searched with alpha below the best score (see tieAlpha) the best moves and their score don't.
+	private int[] parallelScores(List<Move> order, int depth, SearchState state, MoveOrdering ordering,
+			long deadline) {
+		int[] newScores = new int[order.size()];
+		Move first = order.get(0);
+		state.make(first);
+		newScores[0] = minimax(depth, Integer.MIN_VALUE, Integer.MAX_VALUE, false, state, ordering, deadline);
+		state.unmake(first);
+
+		AtomicInteger alpha = new AtomicInteger(newScores[0]);
+		AtomicBoolean outOfTime = new AtomicBoolean();
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int i = 1; i < order.size(); i++) {
+			int index = i;
+			SearchState copy = new SearchState(state);
+			tasks.add(pool().submit(() -> {
+				if (outOfTime.get()) return;
+				Move move = order.get(index);
+				copy.make(move);
+				try {
+					newScores[index] = minimax(depth, tieAlpha(alpha.get()), Integer.MAX_VALUE, false, copy, newOrdering(copy),
+							deadline);
+					alpha.accumulateAndGet(newScores[index], Math::max);
+				} catch (OutOfTime e) {
+					outOfTime.set(true);
+				}
+			}));
+		}
+		// Joining makes the scores written by the tasks visible here
+		for (ForkJoinTask<?> task : tasks) task.join();
+		if (outOfTime.get()) throw OUT_OF_TIME;
+		return newScores;
+	}
+
+	// Starts a helper for every thread but the calling one, each searching the root on its own copy of the state
+	// until pickMove is done. Their scores are thrown away, what they leave in the table is what helps: the main
+	// thread finds positions already searched and best moves to try first.
+	// Every other helper is a level ahead of the main thread, and each helper starts from a different root move,
+	// so they aren't all searching the same positions at the same time.
+	private List<ForkJoinTask<?>> startHelpers(List<Move> order, SearchState state, int maxDepth, long deadline) {
+		List<ForkJoinTask<?>> helpers = new ArrayList<>();
+		for (int helper = 1; helper < threads; helper++) {
+			List<Move> helperOrder = new ArrayList<>(order);
+			Collections.rotate(helperOrder, -helper);
+			SearchState copy = new SearchState(state);
+			MoveOrdering ordering = newOrdering(copy);
+			int firstDepth = 1 + helper % 2;
+			helpers.add(pool().submit(() -> {
+				try {
+					for (int depth = firstDepth; depth <= maxDepth; depth++)
+						sequentialScores(helperOrder, depth, copy, ordering, deadline);
+				} catch (OutOfTime e) {
+					// Either the time is up or the main thread has finished
+				}
+			}));
 		}
+		return helpers;
+	}
+
+	// Returns a move ordering for a thread searching the state, sharing the history with the other threads
+	private MoveOrdering newOrdering(SearchState state) {
+		return new MoveOrdering(historyFor(state), DistanceOracle.of(state.getSetup()));
+	}
+
+	// Returns the history table for the state's graph, a new one if the last state searched was on another graph
+	private synchronized HistoryTable historyFor(SearchState state) {
+		TransportGraph graph = TransportGraph.of(state.getSetup());
+		if (history == null || !history.isFor(graph)) history = new HistoryTable(graph);
+		return history;
+	}
+
+	// Returns how good the position is for Mr X, searched to the given depth with him up next, and leaves the
+	// state as it was. For the detectives' ai, which searches positions where it has guessed where Mr X is.
+	// Throws OutOfTime once the System.nanoTime() deadline has passed, leaving the state halfway down the tree.
+	// Can be called from several threads at once, each with a state and deadline of its own, but not while
+	// pickMove is searching.
+	public int score(SearchState state, int depth, long deadline) {
+		return minimax(depth, Integer.MIN_VALUE, Integer.MAX_VALUE, true, state, newOrdering(state), deadline);
+	}
 
-		else { return moves.get(new Random().nextInt(moves.size())); }
+	private ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool(threads);
+		return pool;
 	}
 }
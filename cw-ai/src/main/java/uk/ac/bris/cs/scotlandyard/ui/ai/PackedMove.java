@@ -0,0 +1,106 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.InternedMoves;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+// Moves packed into a long, so search code can generate, store and compare them without creating objects.
+// Layout: the source, first and second destination take 16 bits each from the lowest bit up, followed by
+// 3 bits for each ticket, 4 for the piece and 1 that is set for double moves. A single move only uses the
+// first destination and ticket. of and toMove convert from and to the Move classes used everywhere else.
+public final class PackedMove {
+
+	// Stands for no move, no packed move is negative
+	public static final long NONE = -1;
+
+	private static final int LOCATION_BITS = 16;
+	private static final long LOCATION_MASK = (1L << LOCATION_BITS) - 1;
+	private static final int DESTINATION1_SHIFT = 16;
+	private static final int DESTINATION2_SHIFT = 32;
+	private static final int TICKET1_SHIFT = 48;
+	private static final int TICKET2_SHIFT = 51;
+	private static final int PIECE_SHIFT = 54;
+	private static final int DOUBLE_SHIFT = 58;
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Detective[] DETECTIVES = Detective.values();
+
+	private PackedMove() {}
+
+	// Returns the number standing for a piece, 0 for Mr X and one more than the ordinal for a detective
+	public static int pieceId(@Nonnull Piece piece) {
+		return piece instanceof Detective detective ? detective.ordinal() + 1 : 0;
+	}
+
+	// Returns the piece of a number from pieceId
+	@Nonnull public static Piece piece(int id) { return id == 0 ? MrX.MRX : DETECTIVES[id - 1]; }
+
+	public static long single(int pieceId, int source, Ticket ticket, int destination) {
+		return location(source)
+				| location(destination) << DESTINATION1_SHIFT
+				| (long) ticket.ordinal() << TICKET1_SHIFT
+				| (long) pieceId << PIECE_SHIFT;
+	}
+
+	public static long doubleMove(int source, Ticket ticket1, int destination1, Ticket ticket2, int destination2) {
+		return single(0, source, ticket1, destination1)
+				| location(destination2) << DESTINATION2_SHIFT
+				| (long) ticket2.ordinal() << TICKET2_SHIFT
+				| 1L << DOUBLE_SHIFT;
+	}
+
+	private static long location(int location) {
+		if (location < 0 || location > LOCATION_MASK) throw new IllegalArgumentException("Location out of range: " + location);
+		return location;
+	}
+
+	// Returns the packed form of a move
+	public static long of(@Nonnull Move move) {
+		if (move instanceof SingleMove single)
+			return single(pieceId(single.commencedBy()), single.source(), single.ticket, single.destination);
+		var doubleMove = (DoubleMove) move;
+		return doubleMove(doubleMove.source(), doubleMove.ticket1, doubleMove.destination1,
+				doubleMove.ticket2, doubleMove.destination2);
+	}
+
+	// Returns the move a packed move stands for
+	@Nonnull public static Move toMove(long move) {
+		if (isDouble(move))
+			return new DoubleMove(piece(pieceId(move)), source(move), ticket1(move), destination1(move),
+					ticket2(move), destination2(move));
+		return new SingleMove(piece(pieceId(move)), source(move), ticket1(move), destination1(move));
+	}
+
+	// Returns the interned move a packed move stands for
+	@Nonnull public static Move toMove(@Nonnull InternedMoves interned, long move) {
+		if (isDouble(move))
+			return interned.doubleMove(piece(pieceId(move)), source(move), ticket1(move), destination1(move),
+					ticket2(move), destination2(move));
+		return interned.single(piece(pieceId(move)), source(move), ticket1(move), destination1(move));
+	}
+
+	public static boolean isDouble(long move) { return (move >>> DOUBLE_SHIFT & 1) != 0; }
+
+	public static int pieceId(long move) { return (int) (move >>> PIECE_SHIFT) & 0xf; }
+
+	public static int source(long move) { return (int) (move & LOCATION_MASK); }
+
+	public static Ticket ticket1(long move) { return TICKETS[(int) (move >>> TICKET1_SHIFT) & 0x7]; }
+
+	public static int destination1(long move) { return (int) (move >>> DESTINATION1_SHIFT & LOCATION_MASK); }
+
+	// Only meaningful for double moves
+	public static Ticket ticket2(long move) { return TICKETS[(int) (move >>> TICKET2_SHIFT) & 0x7]; }
+
+	// Only meaningful for double moves
+	public static int destination2(long move) { return (int) (move >>> DESTINATION2_SHIFT & LOCATION_MASK); }
+
+	// Returns where the move ends, whether it is a single or a double move
+	public static int destination(long move) { return isDouble(move) ? destination2(move) : destination1(move); }
+}
@@ -0,0 +1,29 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+
+// Picks any of the available moves at random, for either side. The baseline the other ais are measured
+// against in playouts.
+public class RandomAi implements Ai {
+
+	private final Random random;
+
+	public RandomAi() { this.random = new Random(); }
+
+	// Creates the ai whose choices are repeatable for the same seed
+	public RandomAi(long seed) { this.random = new Random(seed); }
+
+	@Nonnull @Override public String name() { return "Random"; }
+
+	@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+		var moves = board.getAvailableMoves().asList();
+		return moves.get(random.nextInt(moves.size()));
+	}
+}
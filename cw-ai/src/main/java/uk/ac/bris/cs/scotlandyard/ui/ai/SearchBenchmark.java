@@ -0,0 +1,81 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+// Measures how much faster MyAi searches with more threads. The same positions are searched to the same fixed
+// depth once on one thread and once on many for each way of sharing the search, each time with a new table,
+// and the times are compared. The positions searched at each depth of the iterative deepening on one thread
+// show how much the move ordering prunes.
+// The positions are Mr X's turns from seeded games of random moves.
+public final class SearchBenchmark {
+
+	private SearchBenchmark() {}
+
+	// Returns Mr X's turns along the game with the given seed, both sides moving at random
+	private static List<GameState> positions(GameSetup setup, int detectiveCount, long seed) {
+		List<GameState> positions = new ArrayList<>();
+		GameState state = BatchRunner.startState(setup, detectiveCount, seed);
+		Random random = new Random(seed);
+		while (state.getWinner().isEmpty() && !state.getAvailableMoves().isEmpty()) {
+			var moves = state.getAvailableMoves().asList();
+			if (moves.get(0).commencedBy().isMrX()) positions.add(state);
+			state = state.advance(moves.get(random.nextInt(moves.size())));
+		}
+		return positions;
+	}
+
+	// Searches every position to the given depth with a new ai on the given number of threads, returning the
+	// time taken in nanoseconds, the positions searched by all threads and then the positions searched at each
+	// depth from 1
+	private static long[] time(List<GameState> positions, int depth, int threads, MyAi.Parallelism parallelism) {
+		long[] result = new long[2 + depth];
+		MyAi ai = new MyAi(1L << 24, new Random(0), threads, parallelism);
+		try {
+			for (GameState position : positions) {
+				long start = System.nanoTime();
+				ai.pickMove(position, Long.MAX_VALUE, depth);
+				result[0] += System.nanoTime() - start;
+				result[1] += ai.lastNodes();
+				List<Long> byDepth = ai.lastNodesByDepth();
+				for (int d = 0; d < byDepth.size(); d++) result[2 + d] += byDepth.get(d);
+			}
+		} finally {
+			ai.onTerminate();
+		}
+		return result;
+	}
+
+	// Prints the time and positions searched per second on one thread and on many, and the speedup.
+	// Arguments, all optional: games to take positions from, depth, threads, seed
+	public static void main(String[] args) throws IOException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		List<GameState> positions = new ArrayList<>();
+		for (int game = 0; game < games; game++) positions.addAll(positions(setup, 5, seed + game));
+		// Once round first so the JIT has compiled the search before anything is timed
+		time(positions, depth, 1, MyAi.Parallelism.ROOT_SPLIT);
+
+		long[] one = time(positions, depth, 1, MyAi.Parallelism.ROOT_SPLIT);
+		System.out.printf("%d positions at depth %d on %d cores%n",
+				positions.size(), depth, Runtime.getRuntime().availableProcessors());
+		print("1 thread", one, one);
+		for (int d = 1; d <= depth; d++) System.out.printf("  depth %2d %12d nodes%n", d, one[1 + d]);
+		for (MyAi.Parallelism parallelism : MyAi.Parallelism.values())
+			print(threads + " threads " + parallelism, time(positions, depth, threads, parallelism), one);
+	}
+
+	private static void print(String name, long[] result, long[] baseline) {
+		System.out.printf("%-24s %8.2fs %12d nodes %10.0f nodes/s, speedup %.2fx%n",
+				name, result[0] / 1e9, result[1], result[1] * 1e9 / result[0], (double) baseline[0] / result[0]);
+	}
+}
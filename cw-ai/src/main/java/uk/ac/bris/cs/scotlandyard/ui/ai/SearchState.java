@@ -0,0 +1,445 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.*;
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+// A mutable game state for searching. Moves are applied in place with make and taken back with unmake,
+// so a search can walk down and back up the game tree without building a new state for every node.
+// The rules are the same as MyGameStateFactory's, moves must be made in the order of the game and unmade
+// in the reverse order. Being a Board the evaluation can read it like any other, the answers always
+// describe the current position.
+public final class SearchState implements Board {
+
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private final GameSetup setup;
+	private final TransportGraph graph;
+	private final InternedMoves interned;
+	// Index 0 is always Mr X, the same indices are used for locations, tickets and the remaining bits
+	private final Piece[] pieces;
+	// PackedMove.pieceId of each player, and the other way around the index of each piece id or -1
+	private final int[] ids;
+	private final int[] indexById;
+	private final ImmutableSet<Piece> players;
+	private final ImmutableSet<Piece> mrXWins;
+	private final ImmutableSet<Piece> detectivesWin;
+	private final int[] locations;
+	// The detectives' locations as a bitset, moved along with them
+	private final NodeSet occupied;
+	// Ticket counts, TICKETS.length of them per player in Ticket.ordinal() order
+	private final int[] tickets;
+	private final LogEntry[] log;
+	private int logSize;
+	// Bit i is set if the player at index i still has to move in this round
+	private int remaining;
+	// The remaining bits from before each made move, to restore them on unmake
+	private int[] history = new int[16];
+	private int depth;
+	// Move lists handed out by availableMoves, one per depth
+	private MoveList[] buffers = new MoveList[16];
+	// Zobrist hash of the current position, kept up to date by every change below
+	private long hash;
+
+	// Creates a search state for a board on Mr X's turn, his location is the source of his moves
+	public SearchState(Board board) {
+		this(board, mrXLocation(board));
+	}
+
+	// Creates a search state for any board. Only Mr X knows where he is, so anyone else has to say
+	// where to assume he is.
+	public SearchState(Board board, int mrXLocation) {
+		this.setup = board.getSetup();
+		this.graph = TransportGraph.of(setup);
+		this.interned = InternedMoves.of(setup);
+		List<Piece> order = new ArrayList<>();
+		for (Piece piece : board.getPlayers()) {
+			if (piece.isMrX()) order.add(0, piece);
+			else order.add(piece);
+		}
+		if (order.isEmpty() || order.get(0).isDetective()) throw new IllegalArgumentException("No Mr X on the board!");
+		if (order.size() > Integer.SIZE - 1) throw new IllegalArgumentException("Too many players: " + order.size());
+		this.pieces = order.toArray(new Piece[0]);
+		this.ids = new int[pieces.length];
+		this.indexById = new int[Detective.values().length + 1];
+		Arrays.fill(indexById, -1);
+		for (int i = 0; i < pieces.length; i++) {
+			ids[i] = PackedMove.pieceId(pieces[i]);
+			indexById[ids[i]] = i;
+		}
+		this.players = ImmutableSet.copyOf(pieces);
+		this.mrXWins = ImmutableSet.of(pieces[0]);
+		this.detectivesWin = ImmutableSet.copyOf(Arrays.copyOfRange(pieces, 1, pieces.length));
+		this.locations = new int[pieces.length];
+		this.tickets = new int[pieces.length * TICKETS.length];
+		for (int i = 0; i < pieces.length; i++) {
+			locations[i] = i == 0 ? mrXLocation : board.getDetectiveLocation((Detective) pieces[i]).orElseThrow();
+			TicketBoard ticketBoard = board.getPlayerTickets(pieces[i]).orElseThrow();
+			for (Ticket ticket : TICKETS) tickets[i * TICKETS.length + ticket.ordinal()] = ticketBoard.getCount(ticket);
+		}
+		if (!graph.contains(mrXLocation)) throw new IllegalArgumentException("Mr X is not on the graph!");
+		this.occupied = new NodeSet(graph);
+		for (int i = 1; i < pieces.length; i++) occupied.add(locations[i]);
+		this.log = new LogEntry[setup.moves.size()];
+		for (LogEntry entry : board.getMrXTravelLog()) log[logSize++] = entry;
+
+		// Whoever still has a move is yet to move this round
+		for (Move move : board.getAvailableMoves()) remaining |= 1 << indexOf(move.commencedBy());
+		if (remaining == 0 && board.getWinner().isEmpty()) {
+			// No moves but no winner either, the detectives yet to move are all blocked by the others
+			for (int i = 1; i < pieces.length; i++) {
+				if (!canMove(i)) remaining |= 1 << i;
+			}
+		} else if (remaining == 0) {
+			// A finished game has no moves to tell whose turn it is, take the turn that ends the same way
+			remaining = 1;
+			if (!getWinner().equals(board.getWinner())) remaining = ((1 << pieces.length) - 1) & ~1;
+		}
+		this.hash = computeHash();
+	}
+
+	// Creates a copy of another search state that can be searched independently, on another thread. The moves
+	// made on the other state so far are part of the copy's position but can't be unmade on it.
+	public SearchState(SearchState other) {
+		this.setup = other.setup;
+		this.graph = other.graph;
+		this.interned = other.interned;
+		this.pieces = other.pieces;
+		this.ids = other.ids;
+		this.indexById = other.indexById;
+		this.players = other.players;
+		this.mrXWins = other.mrXWins;
+		this.detectivesWin = other.detectivesWin;
+		this.locations = other.locations.clone();
+		this.occupied = other.occupied.copy();
+		this.tickets = other.tickets.clone();
+		this.log = other.log.clone();
+		this.logSize = other.logSize;
+		this.remaining = other.remaining;
+		this.hash = other.hash;
+	}
+
+	// Returns the source of Mr X's moves, which is where he is
+	private static int mrXLocation(Board board) {
+		for (Move move : board.getAvailableMoves()) {
+			if (move.commencedBy().isMrX()) return move.source();
+		}
+		throw new IllegalArgumentException("Mr X's location is only known on his turn");
+	}
+
+	// Returns the index of the given piece, or -1 if it is not part of the game
+	private int indexOf(Piece piece) {
+		for (int i = 0; i < pieces.length; i++) {
+			if (pieces[i] == piece) return i;
+		}
+		return -1;
+	}
+
+	private int count(int i, Ticket ticket) { return tickets[i * TICKETS.length + ticket.ordinal()]; }
+
+	private void add(int i, Ticket ticket, int n) {
+		int index = i * TICKETS.length + ticket.ordinal();
+		hash ^= Zobrist.tickets(pieces[i], ticket, tickets[index]) ^ Zobrist.tickets(pieces[i], ticket, tickets[index] + n);
+		tickets[index] += n;
+	}
+
+	private void moveTo(int i, int location) {
+		hash ^= Zobrist.location(pieces[i], locations[i]) ^ Zobrist.location(pieces[i], location);
+		if (i > 0) occupied.move(locations[i], location);
+		locations[i] = location;
+	}
+
+	private void setRemaining(int bits) {
+		for (int i = 0; i < pieces.length; i++) {
+			if (((remaining ^ bits) & (1 << i)) != 0) hash ^= Zobrist.toMove(pieces[i]);
+		}
+		remaining = bits;
+	}
+
+	// Returns the hash of the current position from scratch
+	private long computeHash() {
+		long h = Zobrist.log(logSize);
+		for (int i = 0; i < pieces.length; i++) {
+			h ^= Zobrist.location(pieces[i], locations[i]);
+			for (Ticket ticket : TICKETS) h ^= Zobrist.tickets(pieces[i], ticket, count(i, ticket));
+			if ((remaining & (1 << i)) != 0) h ^= Zobrist.toMove(pieces[i]);
+		}
+		return h;
+	}
+
+	@Nonnull @Override public GameSetup getSetup() { return setup; }
+
+	@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return players; }
+
+	@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+		int i = indexOf(detective);
+		if (i < 1) return Optional.empty();
+		return Optional.of(locations[i]);
+	}
+
+	// The returned board follows the state as moves are made and unmade
+	@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+		int i = indexOf(piece);
+		if (i < 0) return Optional.empty();
+		return Optional.of(ticket -> count(i, ticket));
+	}
+
+	@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() {
+		return ImmutableList.copyOf(Arrays.asList(log).subList(0, logSize));
+	}
+
+	// Returns Mr X's current location
+	public int mrXLocation() { return locations[0]; }
+
+	// Returns the number of players, Mr X and the detectives
+	public int playerCount() { return pieces.length; }
+
+	// Returns the location of the player at index i, Mr X being 0 and the detectives following in the order
+	// of the board's players
+	public int location(int i) { return locations[i]; }
+
+	// Returns the number of moves made since the state was created
+	public int depth() { return depth; }
+
+	// Returns the Zobrist hash of the current position, see Zobrist
+	public long hash() { return hash; }
+
+	// Same rules as MyGameState.determineWinner
+	@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+		boolean mrXTurn = (remaining & 1) != 0;
+		boolean detWon = false;
+		boolean detHaveTickets = false;
+		for (int i = 1; i < pieces.length; i++) {
+			if (locations[i] == locations[0]) detWon = true;
+			if (count(i, Ticket.TAXI) > 0 || count(i, Ticket.BUS) > 0 || count(i, Ticket.UNDERGROUND) > 0)
+				detHaveTickets = true;
+		}
+		if (!detWon && mrXTurn && !canMove(0)) detWon = true;
+
+		if (detWon) return detectivesWin;
+		if (!detHaveTickets) return mrXWins;
+		if (!mrXTurn && !anyDetectiveCanMove()) return mrXWins;
+		if (mrXTurn && logSize == setup.moves.size()) return mrXWins;
+		return ImmutableSet.of();
+	}
+
+	@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+		MoveList moves = new MoveList();
+		generateMoves(moves);
+		var builder = ImmutableSet.<Move>builderWithExpectedSize(moves.size());
+		for (int n = 0; n < moves.size(); n++) builder.add(PackedMove.toMove(interned, moves.get(n)));
+		return builder.build();
+	}
+
+	// Generates the available moves into a buffer kept for the current depth, so nothing is allocated once
+	// the search has been this deep before. The list stays valid until moves are generated again at this
+	// depth, which can't happen before the moves made after it are unmade.
+	public MoveList availableMoves() {
+		if (depth >= buffers.length) buffers = Arrays.copyOf(buffers, Math.max(depth + 1, buffers.length * 2));
+		if (buffers[depth] == null) buffers[depth] = new MoveList();
+		generateMoves(buffers[depth]);
+		return buffers[depth];
+	}
+
+	// Replaces the contents of the list with the available moves as packed moves, see PackedMove
+	public void generateMoves(MoveList moves) {
+		moves.clear();
+		if (!getWinner().isEmpty()) return;
+		for (int i = 0; i < pieces.length; i++) {
+			if ((remaining & (1 << i)) == 0) continue;
+			addSingleMoves(moves, i, locations[i]);
+			// Mr X can only make a double move if there are at least 2 log cells left
+			if (i == 0 && logSize <= setup.moves.size() - 2) addDoubleMoves(moves);
+		}
+	}
+
+	// Returns the tickets (a bit per Ticket.ordinal()) the player at index i can take along an edge
+	private int ticketsFor(int i, int edge) {
+		int bits = 0;
+		for (Transport t : TRANSPORTS) {
+			if ((graph.transports(edge) & TransportGraph.mask(t)) != 0 && count(i, t.requiredTicket()) > 0)
+				bits |= 1 << t.requiredTicket().ordinal();
+		}
+		if (count(i, Ticket.SECRET) > 0) bits |= 1 << Ticket.SECRET.ordinal();
+		return bits;
+	}
+
+	private void addSingleMoves(MoveList moves, int i, int source) {
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			int destination = graph.neighbour(edge);
+			if (isOccupied(destination)) continue;
+			int bits = ticketsFor(i, edge);
+			for (Ticket ticket : TICKETS) {
+				if ((bits & (1 << ticket.ordinal())) != 0) moves.add(PackedMove.single(ids[i], source, ticket, destination));
+			}
+		}
+	}
+
+	private void addDoubleMoves(MoveList moves) {
+		if (count(0, Ticket.DOUBLE) == 0) return;
+		int source = locations[0];
+		for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+			int destination1 = graph.neighbour(edge1);
+			if (isOccupied(destination1)) continue;
+			int bits1 = ticketsFor(0, edge1);
+			for (int edge2 = graph.start(destination1); edge2 < graph.end(destination1); edge2++) {
+				int destination2 = graph.neighbour(edge2);
+				if (isOccupied(destination2)) continue;
+				int bits2 = ticketsFor(0, edge2);
+				for (Ticket ticket1 : TICKETS) {
+					if ((bits1 & (1 << ticket1.ordinal())) == 0) continue;
+					for (Ticket ticket2 : TICKETS) {
+						if ((bits2 & (1 << ticket2.ordinal())) == 0) continue;
+						// Using the same kind of ticket twice takes two of them
+						if (ticket1 != ticket2 || count(0, ticket2) >= 2)
+							moves.add(PackedMove.doubleMove(source, ticket1, destination1, ticket2, destination2));
+					}
+				}
+			}
+		}
+	}
+
+	// Same as MyGameState.hasAnyMove, stops at the first legal move found
+	@Override public boolean hasAnyMove(@Nonnull Piece piece) {
+		int i = indexOf(piece);
+		if (i < 0 || (remaining & (1 << i)) == 0 || !getWinner().isEmpty()) return false;
+		return canMove(i);
+	}
+
+	@Nonnull @Override public ImmutableSet<Piece> movablePieces() {
+		var builder = ImmutableSet.<Piece>builder();
+		for (Piece piece : pieces) {
+			if (hasAnyMove(piece)) builder.add(piece);
+		}
+		return builder.build();
+	}
+
+	// Checks whether any detective is standing at the given location
+	public boolean isOccupied(int location) { return occupied.contains(location); }
+
+	// Returns the nodes any detective could move to next, for every detective the nodes one step away along
+	// a route it still holds a ticket for. Nodes taken by other detectives are included, they are only
+	// blocked until that detective moves on.
+	public NodeSet detectiveThreats() {
+		NodeSet threats = new NodeSet(graph);
+		for (int i = 1; i < pieces.length; i++) threats.addReachable(graph, locations[i], usableTransports(i));
+		return threats;
+	}
+
+	// Returns the bitmask of transports the player at index i still holds a ticket for
+	private int usableTransports(int i) {
+		int usable = 0;
+		for (Ticket ticket : TICKETS) {
+			if (count(i, ticket) > 0) usable |= TransportGraph.ticketMask(ticket);
+		}
+		return usable;
+	}
+
+	// Checks whether the player at index i has at least one legal move, stops at the first one found
+	private boolean canMove(int i) {
+		int usable = usableTransports(i);
+		int source = locations[i];
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			if ((graph.transports(edge) & usable) != 0 && !occupied.contains(graph.neighbour(edge))) return true;
+		}
+		return false;
+	}
+
+	private boolean anyDetectiveCanMove() {
+		for (int i = 1; i < pieces.length; i++) {
+			if (canMove(i)) return true;
+		}
+		return false;
+	}
+
+	// Adds the entry of one journey of Mr X to the log, revealing it if this round is a reveal round
+	private void appendLog(Ticket ticket, int destination) {
+		log[logSize] = setup.moves.get(logSize) ? LogEntry.reveal(ticket, destination) : LogEntry.hidden(ticket);
+		hash ^= Zobrist.log(logSize) ^ Zobrist.log(logSize + 1);
+		logSize++;
+	}
+
+	private void removeLog() {
+		hash ^= Zobrist.log(logSize) ^ Zobrist.log(logSize - 1);
+		log[--logSize] = null;
+	}
+
+	// Applies an available move to this state
+	public void make(Move move) { make(PackedMove.of(move)); }
+
+	// Takes back the move made last
+	public void unmake(Move move) { unmake(PackedMove.of(move)); }
+
+	// Applies an available packed move to this state
+	public void make(long move) {
+		int i = indexById[PackedMove.pieceId(move)];
+		if (depth == history.length) history = Arrays.copyOf(history, depth * 2);
+		history[depth++] = remaining;
+		Ticket ticket1 = PackedMove.ticket1(move);
+		if (!PackedMove.isDouble(move)) {
+			moveTo(i, PackedMove.destination1(move));
+			add(i, ticket1, -1);
+			if (i == 0) appendLog(ticket1, PackedMove.destination1(move));
+			// Tickets used by detectives are given to Mr X
+			else add(0, ticket1, 1);
+		} else {
+			Ticket ticket2 = PackedMove.ticket2(move);
+			moveTo(0, PackedMove.destination2(move));
+			add(0, ticket1, -1);
+			add(0, ticket2, -1);
+			add(0, Ticket.DOUBLE, -1);
+			appendLog(ticket1, PackedMove.destination1(move));
+			appendLog(ticket2, PackedMove.destination2(move));
+		}
+		if (i == 0) {
+			// Every detective with a legal move gets a turn after Mr X
+			int detectives = 0;
+			for (int d = 1; d < pieces.length; d++) {
+				if (canMove(d)) detectives |= 1 << d;
+			}
+			setRemaining(detectives);
+		} else {
+			// Mr X is up again once every detective has moved
+			int left = remaining & ~(1 << i);
+			setRemaining(left == 0 ? 1 : left);
+		}
+	}
+
+	// Ends the detectives' round early, the ones yet to move lose their turn and Mr X is up. Not a rule of the
+	// game, it is for searches that only let some of the detectives move (Best-Reply Search). Taken back with
+	// unpass like a move.
+	public void pass() {
+		if (depth == history.length) history = Arrays.copyOf(history, depth * 2);
+		history[depth++] = remaining;
+		setRemaining(1);
+	}
+
+	// Takes back the pass made last
+	public void unpass() { setRemaining(history[--depth]); }
+
+	// Takes back the packed move made last
+	public void unmake(long move) {
+		int i = indexById[PackedMove.pieceId(move)];
+		Ticket ticket1 = PackedMove.ticket1(move);
+		moveTo(i, PackedMove.source(move));
+		if (!PackedMove.isDouble(move)) {
+			add(i, ticket1, 1);
+			if (i == 0) removeLog();
+			else add(0, ticket1, -1);
+		} else {
+			add(0, ticket1, 1);
+			add(0, PackedMove.ticket2(move), 1);
+			add(0, Ticket.DOUBLE, 1);
+			removeLog();
+			removeLog();
+		}
+		setRemaining(history[--depth]);
+	}
+}
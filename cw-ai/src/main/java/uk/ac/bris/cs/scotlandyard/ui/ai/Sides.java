@@ -0,0 +1,25 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+
+// The sides of the game an ai can play. An ai that only plays one side says so by implementing Declared, any
+// other ai is taken to play both.
+public enum Sides {
+	MR_X, DETECTIVES, BOTH;
+
+	// Implemented by the ais that can't play both sides
+	public interface Declared {
+		@Nonnull Sides sides();
+	}
+
+	// Returns the sides the ai declares, both if it doesn't
+	@Nonnull public static Sides of(@Nonnull Ai ai) {
+		return ai instanceof Declared ? ((Declared) ai).sides() : BOTH;
+	}
+
+	public boolean mrX() { return this != DETECTIVES; }
+
+	public boolean detectives() { return this != MR_X; }
+}
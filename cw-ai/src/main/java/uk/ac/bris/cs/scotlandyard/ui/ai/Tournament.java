@@ -0,0 +1,322 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.ResourceManager;
+import uk.ac.bris.cs.scotlandyard.model.*;
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+// Plays a round robin between ais to compare them: every ai plays every other one, as Mr X and as the
+// detectives, and the games are summed up in a table of win rates and Elo ratings. An ai only plays the sides
+// it can (see Sides), the pairings it can't play are listed apart from the games.
+// Games run side by side on a fixed pool of threads, one per core by default. Each move is picked on a thread
+// of its own so the game can stop waiting once the ai's time is up. An ai that runs out of time, throws or
+// picks an illegal move forfeits the game, the same as it would in the UI. Java 17 has no virtual threads, so
+// the games in play at once are as many as the pool has threads rather than the whole tournament.
+public final class Tournament {
+
+	// Time an ai gets on top of its timeout before it forfeits, for the slack between its clock and ours
+	private static final long GRACE_MILLIS = 200;
+	private static final double INITIAL_RATING = 1500;
+	// How far the ratings move after one game
+	private static final double K = 16;
+
+	// An ai taking part, a new instance of it plays every game
+	public static final class Entrant {
+		private final String name;
+		private final Sides sides;
+		private final Supplier<? extends Ai> factory;
+
+		public Entrant(String name, Sides sides, Supplier<? extends Ai> factory) {
+			this.name = name;
+			this.sides = sides;
+			this.factory = factory;
+		}
+
+		public String name() { return name; }
+
+		public Sides sides() { return sides; }
+	}
+
+	// Returns an entrant for every ai found on the classpath
+	@SuppressWarnings("unchecked") public static ImmutableList<Entrant> scanEntrants() {
+		var entrants = ImmutableList.<Entrant>builder();
+		for (Ai ai : ResourceManager.scanAis()) {
+			Class<Ai> type = (Class<Ai>) ai.getClass();
+			entrants.add(new Entrant(ai.name(), Sides.of(ai), () -> ResourceManager.instantiateAi(type)));
+		}
+		return entrants.build();
+	}
+
+	private final GameSetup setup;
+	private final ImmutableList<Entrant> entrants;
+	private final int detectiveCount;
+	private final Pair<Long, TimeUnit> timeout;
+	private final int threads;
+
+	public Tournament(GameSetup setup,
+			List<Entrant> entrants,
+			int detectiveCount,
+			Pair<Long, TimeUnit> timeout,
+			int threads) {
+		if (entrants.size() < 2) throw new IllegalArgumentException("A tournament needs at least two ais");
+		if (detectiveCount < 1 || detectiveCount > ScotlandYard.DETECTIVES.size())
+			throw new IllegalArgumentException("Bad number of detectives: " + detectiveCount);
+		if (threads < 1) throw new IllegalArgumentException("Bad number of threads: " + threads);
+		if (entrants.stream().noneMatch(mrX -> mrX.sides.mrX() && entrants.stream()
+				.anyMatch(detectives -> detectives != mrX && detectives.sides.detectives())))
+			throw new IllegalArgumentException("None of the ais can play each other");
+		this.setup = setup;
+		this.entrants = ImmutableList.copyOf(entrants);
+		this.detectiveCount = detectiveCount;
+		this.timeout = timeout;
+		this.threads = threads;
+	}
+
+	// How an entrant did over the whole tournament
+	public static final class Standing {
+		private final String name;
+		private int mrXGames;
+		private int mrXWins;
+		private int detectiveGames;
+		private int detectiveWins;
+		private int draws;
+		private int forfeits;
+		private double rating = INITIAL_RATING;
+
+		private Standing(String name) { this.name = name; }
+
+		public String name() { return name; }
+
+		public int games() { return mrXGames + detectiveGames; }
+
+		public int mrXGames() { return mrXGames; }
+
+		public int detectiveGames() { return detectiveGames; }
+
+		public int wins() { return mrXWins + detectiveWins; }
+
+		// Games nobody won, when the remaining detectives blocked each other
+		public int draws() { return draws; }
+
+		// Games lost by running out of time, throwing or picking an illegal move
+		public int forfeits() { return forfeits; }
+
+		public double winRate() { return rate(wins(), games()); }
+
+		public double mrXWinRate() { return rate(mrXWins, mrXGames); }
+
+		public double detectiveWinRate() { return rate(detectiveWins, detectiveGames); }
+
+		public double rating() { return rating; }
+
+		private static double rate(int wins, int games) { return games == 0 ? 0 : (double) wins / games; }
+	}
+
+	// The standings at the end of a tournament, best rated first
+	public static final class Table {
+		private final ImmutableList<Standing> standings;
+		private final int games;
+		private final long nanos;
+		// What the forfeits were, for finding out what went wrong
+		private final ImmutableList<String> forfeits;
+		// The pairings that weren't played as one of the ais can't play its side
+		private final ImmutableList<String> unsupported;
+
+		private Table(ImmutableList<Standing> standings, int games, long nanos,
+				ImmutableList<String> forfeits, ImmutableList<String> unsupported) {
+			this.standings = standings;
+			this.games = games;
+			this.nanos = nanos;
+			this.forfeits = forfeits;
+			this.unsupported = unsupported;
+		}
+
+		public ImmutableList<Standing> standings() { return standings; }
+
+		public ImmutableList<String> forfeits() { return forfeits; }
+
+		public ImmutableList<String> unsupported() { return unsupported; }
+
+		@Override public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(String.format("%d games in %.2fs, %.1f games/s%n", games, nanos / 1e9, games * 1e9 / Math.max(nanos, 1)));
+			builder.append(String.format("%-24s %6s %6s %7s %7s %7s %6s %8s%n",
+					"Ai", "Elo", "Games", "Win%", "MrX%", "Det%", "Draws", "Forfeits"));
+			for (Standing s : standings) {
+				builder.append(String.format("%-24s %6.0f %6d %6.1f%% %6.1f%% %6.1f%% %6d %8d%n",
+						s.name, s.rating, s.games(), 100 * s.winRate(), 100 * s.mrXWinRate(),
+						100 * s.detectiveWinRate(), s.draws, s.forfeits));
+			}
+			for (String forfeit : forfeits) builder.append(forfeit).append(System.lineSeparator());
+			for (String pairing : unsupported) builder.append(pairing).append(System.lineSeparator());
+			return builder.toString();
+		}
+	}
+
+	// One game of the tournament, filled in by the thread that plays it
+	private static final class Game {
+		private final int mrX;
+		private final int detectives;
+		private final long seed;
+		// 1 if Mr X won, 0 if the detectives did and a half if nobody did
+		private double mrXScore = 0.5;
+		// Why the loser forfeited, null if nobody did
+		private String forfeit;
+
+		private Game(int mrX, int detectives, long seed) {
+			this.mrX = mrX;
+			this.detectives = detectives;
+			this.seed = seed;
+		}
+	}
+
+	// Plays every entrant against every other one the given number of times as Mr X and as many times as the
+	// detectives, on the sides they can play. The n-th game of every pairing starts from the same locations,
+	// picked with seed + n.
+	public Table run(int gamesPerPairing, long seed) throws InterruptedException {
+		var unsupported = ImmutableList.<String>builder();
+		for (Entrant mrX : entrants) {
+			for (Entrant detectives : entrants) {
+				if (mrX == detectives || (mrX.sides.mrX() && detectives.sides.detectives())) continue;
+				unsupported.add("Not played, " + mrX.name + " v " + detectives.name + ": "
+						+ (mrX.sides.mrX() ? detectives.name + " can't play the detectives" : mrX.name + " can't play Mr X"));
+			}
+		}
+		List<Game> games = new ArrayList<>();
+		for (int n = 0; n < gamesPerPairing; n++) {
+			for (int mrX = 0; mrX < entrants.size(); mrX++) {
+				for (int detectives = 0; detectives < entrants.size(); detectives++) {
+					if (mrX != detectives && entrants.get(mrX).sides.mrX() && entrants.get(detectives).sides.detectives())
+						games.add(new Game(mrX, detectives, seed + n));
+				}
+			}
+		}
+
+		AtomicInteger next = new AtomicInteger();
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		// Ais that run out of time may keep going for a while, their threads mustn't keep the program alive
+		ExecutorService aiPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("tournament-ai-%d")
+				.setDaemon(true)
+				.build());
+		try {
+			List<Future<Void>> workers = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				workers.add(pool.submit((Callable<Void>) () -> {
+					for (int i = next.getAndIncrement(); i < games.size(); i = next.getAndIncrement())
+						play(games.get(i), aiPool);
+					return null;
+				}));
+			}
+			for (Future<Void> worker : workers) worker.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+			aiPool.shutdownNow();
+		}
+		long nanos = System.nanoTime() - start;
+
+		// Rated in the order the games were scheduled, so the same games always give the same ratings
+		List<Standing> standings = new ArrayList<>();
+		for (Entrant entrant : entrants) standings.add(new Standing(entrant.name));
+		var forfeits = ImmutableList.<String>builder();
+		for (Game game : games) {
+			Standing mrX = standings.get(game.mrX);
+			Standing detectives = standings.get(game.detectives);
+			mrX.mrXGames++;
+			detectives.detectiveGames++;
+			if (game.mrXScore == 1) mrX.mrXWins++;
+			else if (game.mrXScore == 0) detectives.detectiveWins++;
+			else {
+				mrX.draws++;
+				detectives.draws++;
+			}
+			if (game.forfeit != null) {
+				(game.mrXScore == 0 ? mrX : detectives).forfeits++;
+				forfeits.add("Game " + game.seed + ", " + mrX.name + " v " + detectives.name + ": " + game.forfeit);
+			}
+			double expected = 1 / (1 + Math.pow(10, (detectives.rating - mrX.rating) / 400));
+			mrX.rating += K * (game.mrXScore - expected);
+			detectives.rating -= K * (game.mrXScore - expected);
+		}
+		standings.sort(Comparator.comparingDouble(Standing::rating).reversed());
+		return new Table(ImmutableList.copyOf(standings), games.size(), nanos, forfeits.build(), unsupported.build());
+	}
+
+	// Plays one game to the end, or until one of the ais forfeits
+	private void play(Game game, ExecutorService aiPool) throws InterruptedException {
+		GameState state = BatchRunner.startState(setup, detectiveCount, game.seed);
+		Ai mrXAi = entrants.get(game.mrX).factory.get();
+		Ai detectivesAi = entrants.get(game.detectives).factory.get();
+		long limit = timeout.right().toMillis(timeout.left()) + GRACE_MILLIS;
+		mrXAi.onStart();
+		detectivesAi.onStart();
+		try {
+			while (state.getWinner().isEmpty() && !state.getAvailableMoves().isEmpty()) {
+				boolean mrXTurn = state.getAvailableMoves().iterator().next().commencedBy().isMrX();
+				Ai ai = mrXTurn ? mrXAi : detectivesAi;
+				Board board = state;
+				Future<Move> pick = aiPool.submit(() -> ai.pickMove(board, timeout));
+				Move move;
+				try {
+					move = pick.get(limit, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					pick.cancel(true);
+					forfeit(game, mrXTurn, ai.name() + " ran out of time");
+					return;
+				} catch (ExecutionException e) {
+					forfeit(game, mrXTurn, ai.name() + " threw " + e.getCause());
+					return;
+				}
+				if (!state.getAvailableMoves().contains(move)) {
+					forfeit(game, mrXTurn, ai.name() + " picked an illegal move " + move);
+					return;
+				}
+				state = state.advance(move);
+			}
+			if (!state.getWinner().isEmpty()) game.mrXScore = state.getWinner().iterator().next().isMrX() ? 1 : 0;
+		} finally {
+			mrXAi.onTerminate();
+			detectivesAi.onTerminate();
+		}
+	}
+
+	private static void forfeit(Game game, boolean mrX, String reason) {
+		game.mrXScore = mrX ? 0 : 1;
+		game.forfeit = reason;
+	}
+
+	// Runs a tournament between all the ais on the classpath on the standard map and prints the table.
+	// Arguments, all optional: games per pairing, detectives, seed, threads, milliseconds per move
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int detectiveCount = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 0;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		long millis = args.length > 4 ? Long.parseLong(args[4]) : 1000;
+
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		Tournament tournament = new Tournament(setup, scanEntrants(), detectiveCount,
+				Pair.pair(millis, TimeUnit.MILLISECONDS), threads);
+		System.out.print(tournament.run(games, seed));
+	}
+}
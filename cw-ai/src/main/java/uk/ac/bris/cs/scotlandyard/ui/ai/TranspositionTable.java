@@ -0,0 +1,122 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+// A fixed size table of search results keyed by Zobrist hash, so a position reached again by another
+// order of moves (or in the next pickMove) doesn't have to be searched again.
+// Each entry is packed into one long: the score, the depth it was searched to, whether the score is exact
+// or only a bound, the index of the best move in the position's move list and the search it was stored in.
+// The table has no locks, next to each entry it keeps the entry xor-ed with its hash, an entry torn by
+// two threads writing at once no longer matches its hash and reads as a miss.
+public final class TranspositionTable {
+
+	// What a probe returns when nothing is stored for the position, no real entry is 0 as the bound never is
+	public static final long MISS = 0;
+
+	// The score is the true score of the position
+	public static final int EXACT = 1;
+	// The search failed high, the true score is at least the stored one
+	public static final int LOWER = 2;
+	// The search failed low, the true score is at most the stored one
+	public static final int UPPER = 3;
+
+	// Stored best move for when there isn't one
+	public static final int NO_MOVE = -1;
+
+	// Layout of an entry: score in the low 32 bits, then 8 bits of depth, 2 of bound, 16 of best move + 1
+	// and 6 of age
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int MOVE_SHIFT = 42;
+	private static final int AGE_SHIFT = 58;
+	private static final int MAX_DEPTH = 0xff;
+	private static final int MAX_MOVE = 0xfffe;
+	private static final int AGES = 64;
+
+	private final long[] checks;
+	private final long[] entries;
+	private final int mask;
+	private volatile int age;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	// Creates a table using at most the given number of bytes, its size is rounded down to a power of two
+	public TranspositionTable(long bytes) {
+		long size = Long.highestOneBit(Math.max(1, bytes / (2 * Long.BYTES)));
+		if (size > 1 << 30) size = 1 << 30;
+		this.checks = new long[(int) size];
+		this.entries = new long[(int) size];
+		this.mask = (int) size - 1;
+	}
+
+	// Returns the number of entries the table can hold
+	public int capacity() { return entries.length; }
+
+	// Marks the start of a new search, entries of older searches get replaced first
+	public void newSearch() { age = (age + 1) % AGES; }
+
+	// Returns the entry stored for the position, or MISS
+	public long probe(long hash) {
+		int index = (int) hash & mask;
+		long entry = entries[index];
+		if (entry != MISS && (checks[index] ^ entry) == hash) {
+			hits.increment();
+			return entry;
+		}
+		misses.increment();
+		return MISS;
+	}
+
+	// Stores the result of searching a position. The slot is taken from a different position only if that
+	// one was searched less deep or in an older search.
+	public void store(long hash, int depth, int bound, int score, int move) {
+		int index = (int) hash & mask;
+		long old = entries[index];
+		if (old != MISS && (checks[index] ^ old) != hash && age(old) == age && depth(old) > depth) return;
+		long entry = (score & 0xffffffffL)
+				| (long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT
+				| (long) bound << BOUND_SHIFT
+				| (long) (move < 0 || move > MAX_MOVE ? 0 : move + 1) << MOVE_SHIFT
+				| (long) age << AGE_SHIFT;
+		entries[index] = entry;
+		checks[index] = hash ^ entry;
+	}
+
+	// Empties the table and its statistics
+	public void clear() {
+		Arrays.fill(entries, MISS);
+		Arrays.fill(checks, 0);
+		hits.reset();
+		misses.reset();
+	}
+
+	public static int score(long entry) { return (int) entry; }
+
+	public static int depth(long entry) { return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH; }
+
+	public static int bound(long entry) { return (int) (entry >>> BOUND_SHIFT) & 0x3; }
+
+	// Returns the index of the best move in the position's move list, or NO_MOVE
+	public static int move(long entry) { return ((int) (entry >>> MOVE_SHIFT) & 0xffff) - 1; }
+
+	private static int age(long entry) { return (int) (entry >>> AGE_SHIFT); }
+
+	// Returns the number of probes that found their position
+	public long hits() { return hits.sum(); }
+
+	// Returns the number of probes that didn't
+	public long misses() { return misses.sum(); }
+
+	// Returns the share of probes that found their position
+	public double hitRate() {
+		long hits = hits();
+		long probes = hits + misses();
+		return probes == 0 ? 0 : (double) hits / probes;
+	}
+
+	@Override public String toString() {
+		return String.format("TranspositionTable{capacity=%d, hits=%d, misses=%d, hitRate=%.3f}",
+				capacity(), hits(), misses(), hitRate());
+	}
+}
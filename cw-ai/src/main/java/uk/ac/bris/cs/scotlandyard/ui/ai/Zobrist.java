@@ -0,0 +1,59 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.Piece;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+// Zobrist keys for hashing game positions into 64 bits. The hash of a position is the xor of the keys of
+// everything in it: where each piece stands, how many of each ticket it holds, who is yet to move this
+// round and how long Mr X's log is (which also fixes whether the next round is a reveal round).
+// A move only changes a few of these, so a hash is updated by xor-ing the old keys out and the new ones in.
+// Keys are derived from what they stand for instead of looked up in a table, so there is no limit on
+// locations or ticket counts and the same position always hashes the same, whichever state it is in.
+public final class Zobrist {
+
+	private static final long LOCATION = 1;
+	private static final long TICKETS = 2;
+	private static final long TO_MOVE = 3;
+	private static final long LOG = 4;
+
+	private Zobrist() {}
+
+	// Returns the hash of a board with Mr X at the given location
+	public static long of(@Nonnull Board board, int mrXLocation) {
+		return new SearchState(board, mrXLocation).hash();
+	}
+
+	// Returns the key of a piece standing at a location
+	public static long location(@Nonnull Piece piece, int location) {
+		return key(LOCATION, piece, location, 0);
+	}
+
+	// Returns the key of a piece holding count tickets of a kind
+	public static long tickets(@Nonnull Piece piece, @Nonnull Ticket ticket, int count) {
+		return key(TICKETS, piece, ticket.ordinal(), count);
+	}
+
+	// Returns the key of a piece that is yet to move this round
+	public static long toMove(@Nonnull Piece piece) {
+		return key(TO_MOVE, piece, 0, 0);
+	}
+
+	// Returns the key of Mr X's log having the given number of entries
+	public static long log(int size) {
+		return mix(LOG << 60 | size);
+	}
+
+	private static long key(long kind, Piece piece, int a, int count) {
+		return mix(kind << 60 | (long) PackedMove.pieceId(piece) << 52 | (long) (a & 0xfffff) << 32 | (count & 0xffffffffL));
+	}
+
+	// The splitmix64 finaliser, a bijection that spreads every input bit over the whole output
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
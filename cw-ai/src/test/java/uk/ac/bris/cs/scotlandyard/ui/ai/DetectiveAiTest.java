@@ -0,0 +1,75 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests how {@link DetectiveAi} scores the positions at the end of the detectives' round
+ */
+public class DetectiveAiTest {
+
+	// 1 - 2 - 6 - 5 - 4 by taxi, so a detective on 5 leaves one on 4 with nowhere to go
+	private static GameSetup lineSetup() {
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(2, 6, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(6, 5, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(5, 4, ImmutableSet.of(Transport.TAXI))
+				.build();
+		return new GameSetup(graph, STANDARD24MOVES);
+	}
+
+	@Test public void testStuckDetectivesAreScoredByDistance() {
+		GameState board = new MyGameStateFactory().build(lineSetup(),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 6),
+						new Player(BLUE, defaultDetectiveTickets(), 4)));
+		board = board.advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 2));
+		SearchState state = new SearchState(board, 2);
+		// Red blocks blue in, blue is still to move but can't and nobody has won
+		state.make(new Move.SingleMove(RED, 6, Ticket.TAXI, 5));
+		assertThat(state.getWinner()).isEmpty();
+		assertThat(state.getAvailableMoves()).isEmpty();
+
+		DetectiveAi ai = new DetectiveAi(1, 1, 0, new Random(0));
+		// Red is two moves away from Mr X, the position isn't a win for him
+		assertThat(ai.score(state, Long.MAX_VALUE)).isEqualTo(2);
+	}
+
+	@Test public void testCaughtScoresCaught() {
+		GameState board = new MyGameStateFactory().build(lineSetup(),
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(
+						new Player(RED, defaultDetectiveTickets(), 6),
+						new Player(BLUE, defaultDetectiveTickets(), 4)));
+		board = board.advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 2));
+		SearchState state = new SearchState(board, 2);
+		state.make(new Move.SingleMove(RED, 6, Ticket.TAXI, 2));
+		assertThat(new DetectiveAi(1, 1, 0, new Random(0)).score(state, Long.MAX_VALUE)).isEqualTo(DetectiveAi.CAUGHT);
+	}
+
+}
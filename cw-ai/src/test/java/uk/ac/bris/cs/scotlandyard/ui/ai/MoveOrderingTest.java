@@ -0,0 +1,66 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.MyGameStateFactory;
+import uk.ac.bris.cs.scotlandyard.model.Player;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+import uk.ac.bris.cs.scotlandyard.model.TransportGraph;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.STANDARD24MOVES;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests how {@link MoveOrdering} scores moves by distance
+ */
+public class MoveOrderingTest {
+
+	// 1 - 2 and 3 - 4 by taxi, with no way between them
+	private static GameSetup splitSetup() {
+		ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph = ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.putEdgeValue(3, 4, ImmutableSet.of(Transport.TAXI))
+				.build();
+		return new GameSetup(graph, STANDARD24MOVES);
+	}
+
+	private static GameState splitBoard(GameSetup setup) {
+		return new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 1),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 3)));
+	}
+
+	private static MoveOrdering ordering(GameSetup setup) {
+		return new MoveOrdering(new HistoryTable(TransportGraph.of(setup)), DistanceOracle.of(setup));
+	}
+
+	@Test public void testMrXOutOfEveryDetectivesReachScoresTheMost() {
+		GameSetup setup = splitSetup();
+		SearchState state = new SearchState(splitBoard(setup));
+		long move = PackedMove.of(new Move.SingleMove(MRX, 1, Ticket.TAXI, 2));
+		assertThat(ordering(setup).distanceScore(move, state)).isEqualTo(MoveOrdering.MAX_DISTANCE);
+	}
+
+	@Test public void testDetectiveOutOfMrXsReachScoresTheLeast() {
+		GameSetup setup = splitSetup();
+		GameState board = splitBoard(setup).advance(new Move.SingleMove(MRX, 1, Ticket.TAXI, 2));
+		SearchState state = new SearchState(board, 2);
+		long move = PackedMove.of(new Move.SingleMove(RED, 3, Ticket.TAXI, 4));
+		assertThat(ordering(setup).distanceScore(move, state)).isEqualTo(0);
+	}
+
+}
@@ -0,0 +1,58 @@
+package uk.ac.bris.cs.scotlandyard.ui.ai;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+
+import io.atlassian.fugue.Pair;
+import uk.ac.bris.cs.scotlandyard.model.Ai;
+import uk.ac.bris.cs.scotlandyard.model.Board;
+import uk.ac.bris.cs.scotlandyard.model.GameSetup;
+import uk.ac.bris.cs.scotlandyard.model.Move;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests that {@link Tournament} only schedules the sides each entrant can play
+ */
+public class TournamentTest {
+
+	@Test public void testMrXOnlyEntrantNeverPlaysTheDetectives() throws IOException, InterruptedException {
+		AtomicInteger detectiveMoves = new AtomicInteger();
+		// Random moves, counting the ones it is asked to make for the detectives
+		Ai mrXOnly = new Ai() {
+			private final RandomAi random = new RandomAi(0);
+
+			@Nonnull @Override public String name() { return "Mr X only"; }
+
+			@Nonnull @Override public Move pickMove(@Nonnull Board board, Pair<Long, TimeUnit> timeoutPair) {
+				if (!board.getAvailableMoves().iterator().next().commencedBy().isMrX()) detectiveMoves.incrementAndGet();
+				return random.pickMove(board, timeoutPair);
+			}
+		};
+		GameSetup setup = new GameSetup(ScotlandYard.standardGraph(), ScotlandYard.STANDARD24MOVES);
+		Tournament tournament = new Tournament(setup, ImmutableList.of(
+				new Tournament.Entrant("Mr X only", Sides.MR_X, () -> mrXOnly),
+				new Tournament.Entrant("Random", Sides.BOTH, () -> new RandomAi(1)),
+				new Tournament.Entrant("Detectives only", Sides.DETECTIVES, () -> new RandomAi(2))),
+				2, Pair.pair(1000L, TimeUnit.MILLISECONDS), 1);
+		Tournament.Table table = tournament.run(2, 0);
+
+		assertThat(detectiveMoves.get()).isEqualTo(0);
+		Tournament.Standing standing = table.standings().stream()
+				.filter(s -> s.name().equals("Mr X only"))
+				.findFirst().orElseThrow();
+		assertThat(standing.detectiveGames()).isEqualTo(0);
+		assertThat(standing.mrXGames()).isEqualTo(4);
+		// Random and the detectives only entrant can't play the Mr X only one, the detectives only one can't play Mr X
+		assertThat(table.unsupported()).hasSize(3);
+		assertThat(table.forfeits()).isEmpty();
+	}
+
+}
@@ -58,6 +58,29 @@ public interface Board {
 	 * This is mutually exclusive with {@link #getWinner()}
 	 */
 	@Nonnull ImmutableSet<Move> getAvailableMoves();
+	/**
+	 * Implementations should stop at the first move they find instead of generating all of them.
+	 *
+	 * @param piece the player piece
+	 * @return whether any of {@link #getAvailableMoves()} is made by the given piece
+	 */
+	default boolean hasAnyMove(@Nonnull Piece piece) {
+		for (Move move : getAvailableMoves()) {
+			if (move.commencedBy().equals(piece)) return true;
+		}
+		return false;
+	}
+	/**
+	 * Implementations should stop at the first move they find for each piece instead of generating
+	 * all of them.
+	 *
+	 * @return the pieces making any of {@link #getAvailableMoves()}
+	 */
+	@Nonnull default ImmutableSet<Piece> movablePieces() {
+		var pieces = ImmutableSet.<Piece>builder();
+		for (Move move : getAvailableMoves()) pieces.add(move.commencedBy());
+		return pieces.build();
+	}
 
 
 	/**
@@ -0,0 +1,178 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.Visitor;
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.Piece.MrX;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * Canonical {@link Move} instances for the moves along the routes of a game graph.
+ * <br>
+ * A graph only has so many moves: one per piece, route and ticket, plus Mr X's double moves. Asking
+ * for the same move twice returns the same instance, so move generation stops allocating once a
+ * move has been seen and checks such as {@code moves.contains(move)} on interned moves succeed on
+ * identity. Moves that don't follow a route of the graph are created as usual.
+ * <br>
+ * The table is filled in lazily without locks. Two threads interning the same move at the same time
+ * may get different, but equal, instances.
+ * <br>
+ * Use {@link #of(GameSetup)} to get the table of a setup; there is one per graph.
+ */
+public final class InternedMoves {
+
+	// Keyed on the game graph like TransportGraph's cache. The table holds on to the compiled graph, which
+	// doesn't refer back to the game graph, so the entry goes once the game graph is unreachable.
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, InternedMoves>
+			CACHE = CacheBuilder.newBuilder()
+			.weakKeys() // compares keys by identity, graph equality is a deep comparison
+			.build(CacheLoader.from(graph -> new InternedMoves(TransportGraph.of(graph))));
+
+	private static final int TICKETS = Ticket.values().length;
+	// Mr X and each of the detectives
+	private static final int PIECES = Detective.values().length + 1;
+
+	private final TransportGraph graph;
+	// Indexed by edge, ticket and piece
+	private final SingleMove[] singles;
+	// Indexed by first edge and ticket, then by the second edge's position among the edges of the
+	// first destination and ticket
+	private final DoubleMove[][] doubles;
+
+	private InternedMoves(TransportGraph graph) {
+		this.graph = graph;
+		this.singles = new SingleMove[graph.edgeCount() * TICKETS * PIECES];
+		this.doubles = new DoubleMove[graph.edgeCount() * TICKETS][];
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the interned moves of the given setup's graph
+	 */
+	@Nonnull public static InternedMoves of(@Nonnull GameSetup setup) {
+		return CACHE.getUnchecked(setup.graph);
+	}
+
+	/**
+	 * @param piece the piece making the move
+	 * @param source the source
+	 * @param ticket the ticket
+	 * @param destination the destination
+	 * @return the canonical single move with the given values
+	 */
+	@Nonnull public SingleMove single(@Nonnull Piece piece, int source,
+			@Nonnull Ticket ticket, int destination) {
+		int edge = edge(source, destination);
+		if (edge < 0) return new SingleMove(piece, source, ticket, destination);
+		return singleAlong(piece, source, edge, ticket);
+	}
+
+	/**
+	 * Same as {@link #single(Piece, int, Ticket, int)}, for callers going through the edges of the
+	 * {@link TransportGraph} that already have the index of the edge, so it isn't looked up again.
+	 *
+	 * @param piece the piece making the move
+	 * @param source the source
+	 * @param edge the index of the edge taken, one of the source's
+	 * @param ticket the ticket
+	 * @return the canonical single move along the edge
+	 */
+	@Nonnull public SingleMove singleAlong(@Nonnull Piece piece, int source, int edge, @Nonnull Ticket ticket) {
+		int destination = graph.neighbour(edge);
+		int id = id(piece);
+		if (id < 0) return new SingleMove(piece, source, ticket, destination);
+		int index = (edge * TICKETS + ticket.ordinal()) * PIECES + id;
+		SingleMove move = singles[index];
+		if (move == null) singles[index] = move = new SingleMove(piece, source, ticket, destination);
+		return move;
+	}
+
+	/**
+	 * @param piece the piece making the move
+	 * @param source the source
+	 * @param ticket1 the first ticket
+	 * @param destination1 the first destination
+	 * @param ticket2 the second ticket
+	 * @param destination2 the second destination
+	 * @return the canonical double move with the given values
+	 */
+	@Nonnull public DoubleMove doubleMove(@Nonnull Piece piece, int source,
+			@Nonnull Ticket ticket1, int destination1,
+			@Nonnull Ticket ticket2, int destination2) {
+		int edge1 = edge(source, destination1);
+		int edge2 = edge(destination1, destination2);
+		if (edge1 < 0 || edge2 < 0)
+			return new DoubleMove(piece, source, ticket1, destination1, ticket2, destination2);
+		return doubleAlong(piece, source, edge1, ticket1, edge2, ticket2);
+	}
+
+	/**
+	 * Same as {@link #doubleMove(Piece, int, Ticket, int, Ticket, int)}, for callers going through
+	 * the edges of the {@link TransportGraph} that already have their indices.
+	 *
+	 * @param piece the piece making the move
+	 * @param source the source
+	 * @param edge1 the index of the first edge taken, one of the source's
+	 * @param ticket1 the first ticket
+	 * @param edge2 the index of the second edge taken, one of the first edge's destination's
+	 * @param ticket2 the second ticket
+	 * @return the canonical double move along the edges
+	 */
+	@Nonnull public DoubleMove doubleAlong(@Nonnull Piece piece, int source,
+			int edge1, @Nonnull Ticket ticket1,
+			int edge2, @Nonnull Ticket ticket2) {
+		int destination1 = graph.neighbour(edge1);
+		int destination2 = graph.neighbour(edge2);
+		if (piece != MrX.MRX)
+			return new DoubleMove(piece, source, ticket1, destination1, ticket2, destination2);
+		int row = edge1 * TICKETS + ticket1.ordinal();
+		DoubleMove[] block = doubles[row];
+		if (block == null) doubles[row] = block = new DoubleMove[(graph.end(destination1) - graph.start(destination1)) * TICKETS];
+		int index = (edge2 - graph.start(destination1)) * TICKETS + ticket2.ordinal();
+		DoubleMove move = block[index];
+		if (move == null)
+			block[index] = move = new DoubleMove(piece, source, ticket1, destination1, ticket2, destination2);
+		return move;
+	}
+
+	/**
+	 * @param move the move
+	 * @return the canonical move equal to the given one
+	 */
+	@Nonnull public Move intern(@Nonnull Move move) {
+		return move.accept(new Visitor<Move>() {
+			@Override public Move visit(SingleMove m) {
+				return single(m.commencedBy(), m.source(), m.ticket, m.destination);
+			}
+			@Override public Move visit(DoubleMove m) {
+				return doubleMove(m.commencedBy(), m.source(), m.ticket1, m.destination1, m.ticket2, m.destination2);
+			}
+		});
+	}
+
+	// Returns the index of the edge from source to destination, or -1 if there isn't one. Only for
+	// callers that don't have the index already.
+	private int edge(int source, int destination) {
+		if (!graph.contains(source)) return -1;
+		for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+			if (graph.neighbour(edge) == destination) return edge;
+		}
+		return -1;
+	}
+
+	// Returns the index of a piece, or -1 for pieces that aren't part of the standard game
+	private static int id(Piece piece) {
+		if (piece instanceof Detective) return ((Detective) piece).ordinal() + 1;
+		return piece == MrX.MRX ? 0 : -1;
+	}
+}
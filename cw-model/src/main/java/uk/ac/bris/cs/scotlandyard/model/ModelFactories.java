@@ -24,7 +24,10 @@ public class ModelFactories {
 					>
 			> factories() {
 		return ImmutableList.of(
-				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new));
+				new SimpleImmutableEntry<>(MyGameStateFactory::new, MyModelFactory::new),
+				// Checks that every state advance() makes would pass validation too
+				new SimpleImmutableEntry<>(() -> new MyGameStateFactory(true), MyModelFactory::new),
+				new SimpleImmutableEntry<>(PackedGameStateFactory::new, MyModelFactory::new));
 	}
 
 
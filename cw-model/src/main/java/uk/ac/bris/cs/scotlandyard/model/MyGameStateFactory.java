@@ -1,9 +1,9 @@
 package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.util.*;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 
 import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
@@ -18,15 +18,37 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
  */
 public final class MyGameStateFactory implements Factory<GameState> {
 
+	private static final Transport[] TRANSPORTS = Transport.values();
+	private static final Ticket[] TICKETS = Ticket.values();
+
+	// Name of the system property that turns validation of states made by advance() back on
+	public static final String VALIDATE_ADVANCE_PROPERTY = "scotlandyard.model.validateAdvance";
+
+	// Whether states made by advance() go through the same validation as built ones. A legal move on a valid
+	// state can only lead to a valid state, so this is only worth turning on while debugging the rules.
+	private final boolean validateAdvance;
+
+	public MyGameStateFactory() { this(Boolean.getBoolean(VALIDATE_ADVANCE_PROPERTY)); }
+
+	public MyGameStateFactory(boolean validateAdvance) { this.validateAdvance = validateAdvance; }
+
 	private final class MyGameState implements GameState {
 		// Class attributes
-		private GameSetup setup;
-		private ImmutableSet<Piece> remaining;
-		private ImmutableList<LogEntry> log;
-		private Player mrX;
-		private List<Player> detectives;
+		private final GameSetup setup;
+		private final TransportGraph graph;
+		private final InternedMoves interned;
+		private final ImmutableSet<Piece> remaining;
+		private final ImmutableList<LogEntry> log;
+		private final Player mrX;
+		private final List<Player> detectives;
+		// The detectives' locations, updated from the previous state's as detectives move
+		private final NodeSet occupied;
+		// Computed on first request and cached, a state never changes once built
 		private ImmutableSet<Move> moves;
 		private ImmutableSet<Piece> winner;
+		// The single moves of each detective yet to move this round, either generated on first request or
+		// patched from the previous state's by advance()
+		private ImmutableMap<Piece, ImmutableSet<SingleMove>> detectiveMoves;
 
 		// Constructor for MyGameState, includes input validation.
 		private MyGameState(
@@ -37,22 +59,50 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				final List<Player> detectives){
 
 			this.setup = setup;
+			this.graph = TransportGraph.of(setup);
+			this.interned = InternedMoves.of(setup);
 			this.remaining = remaining;
 			this.log = log;
 			this.mrX = mrX;
 			this.detectives = detectives;
+			validate();
+			this.occupied = new NodeSet(graph);
+			for (Player det : detectives) occupied.add(det.location());
+		}
+
+		// Constructor for the states made by advance(), these are trusted to be valid since the state they
+		// come from was. Shares the setup and what was compiled from it with that state.
+		private MyGameState(
+				final MyGameState previous,
+				final ImmutableSet<Piece> remaining,
+				final ImmutableList<LogEntry> log,
+				final Player mrX,
+				final List<Player> detectives,
+				final NodeSet occupied){
 
-			this.moves = getAvailableMoves();
-			this.winner = getWinner();
+			this.setup = previous.setup;
+			this.graph = previous.graph;
+			this.interned = previous.interned;
+			this.remaining = remaining;
+			this.log = log;
+			this.mrX = mrX;
+			this.detectives = detectives;
+			this.occupied = occupied;
+			if (validateAdvance) validate();
+		}
 
-			// Constructor input validation
-			//
+		// Constructor input validation
+		private void validate(){
 			// Checks that mrX is the black piece
 			if (!mrX.piece().webColour().equals("#000")) throw new IllegalArgumentException("MrX is not the black piece!");
 
 			// Checks that graph is not empty
 			if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
 
+			// Checks that all players are standing on the graph
+			if (!graph.contains(mrX.location()) || detectives.stream().map(Player::location).anyMatch(l -> !graph.contains(l)))
+				throw new IllegalArgumentException("Player location is not on the graph!");
+
 			// Checks that all detectives have different locations
 			if (detectives.stream().map(Player::location).distinct().count() != detectives.size())
 				throw new IllegalArgumentException("Detectives locations overlap");
@@ -137,7 +187,7 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		// Creates an immutable set of all pieces taking a part in the game
 		public ImmutableSet<Piece> allPlayersPresent() {
-			Set<Piece> players = new HashSet<Piece>();
+			Set<Piece> players = new LinkedHashSet<Piece>();
 			for (Player det:detectives){
 				players.add(det.piece());
 			}
@@ -171,11 +221,11 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		// Determines winner(s) of the game if game is over
 		public Set<Piece> determineWinner(){
-			Set<Piece> winnerPieces = new HashSet<>();
+			Set<Piece> winnerPieces = new LinkedHashSet<>();
 			boolean detWon = false;
 			boolean mrXWon = false;
 			boolean AllDetHaveNotRunOutOfTickets = false;
-			Set<Piece> detectivePieces = new HashSet<>();
+			boolean mrXTurn = remaining.contains(mrX.piece());
 
 			// Checks if detectives have caught mrX
 			for (Player det : detectives) {
@@ -187,25 +237,20 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					|| det.hasAtLeast(Ticket.UNDERGROUND, 1)){
 					AllDetHaveNotRunOutOfTickets = true;
 				}
-				detectivePieces.add(det.piece());
 			}
 
-			// Mr X wins if all detectives run out of tickets
-			if (!AllDetHaveNotRunOutOfTickets) { mrXWon = true; }
-
-			// Mr X wins if all detectives run out of legal moves
-			if (combineAvailableMoves(detectivePieces).isEmpty() && !remaining.contains(mrX.piece())){
-				mrXWon = true;
-			}
 			// Detectives win if Mr X is out of moves
-			if (combineAvailableMoves(ImmutableSet.of(mrX.piece())).isEmpty() && remaining.contains(mrX.piece())) {
-				detWon = true;
-			}
-			// Mr X wins if all log cells are used and Mr X hasn't been caught
-			if (remaining.contains(mrX.piece())) {
-				if (log.size() == setup.moves.size()) {
-					mrXWon = true;
-				}
+			if (!detWon && mrXTurn && !canMove(mrX)) { detWon = true; }
+
+			if (!detWon) {
+				// Mr X wins if all detectives run out of tickets
+				if (!AllDetHaveNotRunOutOfTickets) { mrXWon = true; }
+
+				// Mr X wins if all detectives run out of legal moves
+				else if (!mrXTurn && detectives.stream().noneMatch(this::canMove)) { mrXWon = true; }
+
+				// Mr X wins if all log cells are used and Mr X hasn't been caught
+				else if (mrXTurn && log.size() == setup.moves.size()) { mrXWon = true; }
 			}
 
 			// Adds all the detectives to the winner set if the detectives won
@@ -213,9 +258,6 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				for (Player det : detectives) {
 					winnerPieces.add(det.piece());
 				}
-				Set<Piece> remainingNew = new HashSet<>(Set.copyOf(remaining));
-				remainingNew.remove(mrX.piece());
-				remaining = ImmutableSet.copyOf(remaining);
 			}
 			// Adds Mr X to winner set if Mr X won
 			else if (mrXWon) {
@@ -227,27 +269,58 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		// Returns set containing winner pieces if there are any, otherwise returns an empty set
 		@Override public ImmutableSet<Piece> getWinner(){
-			return ImmutableSet.copyOf(determineWinner());
+			if (winner == null) { winner = ImmutableSet.copyOf(determineWinner()); }
+			return winner;
+		}
+
+		// Checks whether the piece has an available move without generating the moves, which it does if it
+		// still has to move this round, the game isn't over and there is at least one legal move for it
+		@Override public boolean hasAnyMove(@Nonnull Piece piece){
+			if (!remaining.contains(piece) || !getWinner().isEmpty()) return false;
+			if (mrX.piece().equals(piece)) return canMove(mrX);
+			for (Player det : detectives) {
+				if (det.piece().equals(piece)) return canMove(det);
+			}
+			return false;
+		}
+
+		// Returns the pieces that have an available move, without generating the moves
+		@Nonnull @Override public ImmutableSet<Piece> movablePieces(){
+			var pieces = ImmutableSet.<Piece>builder();
+			for (Piece piece : remaining) {
+				if (hasAnyMove(piece)) pieces.add(piece);
+			}
+			return pieces.build();
+		}
+
+		// Checks whether a player has at least one legal move, stops at the first one found.
+		// A single move is enough since every double move starts with one.
+		public boolean canMove(Player player){
+			int source = player.location();
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				if (occupied.contains(graph.neighbour(edge))) continue;
+				if (player.has(Ticket.SECRET)) return true;
+				for (Transport t : TRANSPORTS) {
+					if ((graph.transports(edge) & TransportGraph.mask(t)) != 0 && player.has(t.requiredTicket())) return true;
+				}
+			}
+			return false;
 		}
 
 		// Puts all available moves of detectives if it's detectives turn in a set
 		// Otherwise put all available moves of Mr X in a set
 		public Set<Move> combineAvailableMoves(Set<Piece> remaining) {
-			Set<Move> allAvailableMoves = new HashSet<>();
+			Set<Move> allAvailableMoves = new LinkedHashSet<>();
 
 			for (Piece player : remaining) {
 				if (mrX.piece().equals(player)) {
-					allAvailableMoves.addAll(makeSingleMoves(setup, detectives, mrX, mrX.location()));
+					allAvailableMoves.addAll(makeSingleMoves(graph, interned, occupied, mrX, mrX.location()));
 					// mrX can't make a double move if there is only 1 log cell left (Otherwise game crashes)
 					if (log.size() <= setup.moves.size()-2) {
-						allAvailableMoves.addAll(makeDoubleMoves(setup, detectives, mrX, mrX.location()));
+						allAvailableMoves.addAll(makeDoubleMoves(setup, graph, interned, occupied, mrX, mrX.location()));
 					}
 				} else {
-					for (Player det : detectives) {
-						if (det.piece().equals(player)) {
-							allAvailableMoves.addAll(makeSingleMoves(setup, detectives, det, det.location()));
-						}
-					}
+					allAvailableMoves.addAll(detectiveMoves().get(player));
 				}
 			}
 			return allAvailableMoves;
@@ -256,8 +329,56 @@ public final class MyGameStateFactory implements Factory<GameState> {
 		// Returns all legal moves that can be made by detectives if it's their turn
 		// Otherwise returns all legal moves that can be made by Mr X
 		@Override public ImmutableSet<Move> getAvailableMoves(){
-			if (!getWinner().isEmpty()) { return ImmutableSet.of(); }
-			else { return ImmutableSet.copyOf(combineAvailableMoves(remaining)); }
+			if (moves == null) {
+				if (!getWinner().isEmpty()) { moves = ImmutableSet.of(); }
+				else if (remaining.contains(mrX.piece())) { moves = ImmutableSet.copyOf(combineAvailableMoves(remaining)); }
+				else {
+					// The detectives' moves can't overlap, each of them starts at a different location
+					var builder = ImmutableSet.<Move>builder();
+					for (ImmutableSet<SingleMove> detMoves : detectiveMoves().values()) builder.addAll(detMoves);
+					moves = builder.build();
+				}
+			}
+			return moves;
+		}
+
+		// Returns the single moves of each detective yet to move this round
+		private ImmutableMap<Piece, ImmutableSet<SingleMove>> detectiveMoves(){
+			if (detectiveMoves == null) {
+				var builder = ImmutableMap.<Piece, ImmutableSet<SingleMove>>builder();
+				for (Player det : detectives) {
+					if (remaining.contains(det.piece()))
+						builder.put(det.piece(), ImmutableSet.copyOf(makeSingleMoves(graph, interned, occupied, det, det.location())));
+				}
+				detectiveMoves = builder.build();
+			}
+			return detectiveMoves;
+		}
+
+		// Returns the moves of the other detectives yet to move after one detective moved between two nodes.
+		// Their tickets haven't changed, so their moves only differ at those nodes: the one left is free to
+		// move to now and the one arrived at no longer is.
+		private ImmutableMap<Piece, ImmutableSet<SingleMove>> patchDetectiveMoves(Piece moved, int from, int to){
+			var builder = ImmutableMap.<Piece, ImmutableSet<SingleMove>>builder();
+			for (Player det : detectives) {
+				ImmutableSet<SingleMove> before = detectiveMoves().get(det.piece());
+				if (before == null || det.piece().equals(moved)) continue;
+				int source = det.location();
+				// Detectives next to neither node keep the very same moves
+				if (graph.transportsBetween(source, from) == 0 && graph.transportsBetween(source, to) == 0) {
+					builder.put(det.piece(), before);
+					continue;
+				}
+				List<SingleMove> after = new ArrayList<>(before.size() + TRANSPORTS.length);
+				for (SingleMove move : before) {
+					if (move.destination != to) after.add(move);
+				}
+				for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+					if (graph.neighbour(edge) == from) addSingleMoves(after, graph, interned, det, source, edge);
+				}
+				builder.put(det.piece(), ImmutableSet.copyOf(after));
+			}
+			return builder.build();
 		}
 
 		// Returns Mr X Travel Log
@@ -278,15 +399,14 @@ public final class MyGameStateFactory implements Factory<GameState> {
 
 		// Remove player that has made move from remaining list
 		public ImmutableSet<Piece> removeAfterMove(Player current){
-            Set<Piece> newRemaining = new HashSet<Piece>(remaining);
+			Set<Piece> newRemaining = new LinkedHashSet<Piece>(remaining);
 			if (current.isMrX()){
 				newRemaining.remove(mrX.piece());
 				// Adds all detectives with legal moves to the remaining
 				// after mrX does his move
-				newRemaining.addAll(combineAvailableMoves(detectives.stream().map(Player::piece).collect(Collectors.toCollection(HashSet::new)))
-						.stream()
-						.map(Move::commencedBy)
-						.collect(Collectors.toCollection(HashSet::new)));
+				for (Player det : detectives) {
+					if (canMove(det)) { newRemaining.add(det.piece()); }
+				}
 			}
 			else{
 				// Removes detective after their move
@@ -294,76 +414,39 @@ public final class MyGameStateFactory implements Factory<GameState> {
 				newRemaining.remove(current.piece());
 				if (newRemaining.isEmpty()){ newRemaining.add(mrX.piece());}
 			}
-			remaining = ImmutableSet.copyOf(newRemaining);
-			return remaining;
+			return ImmutableSet.copyOf(newRemaining);
 		}
 
-		// Updates players location after they make a move
-		public void updateLocation(Move move){
+		// Returns the player moved to the final destination of a given move
+		public Player updateLocation(Move move, Player current){
 			// Uses visitor design pattern to access private fields
 			int newLocation = move.accept(new Visitor<Integer>(){
 				// Check whether it's a single or double move
 				@Override public Integer visit(SingleMove singleMove){ return singleMove.destination; }
 				@Override public Integer visit(DoubleMove doubleMove){ return doubleMove.destination2; }
 			});
-			// Updates the location of the piece that has made a given move
-			if (move.commencedBy().isMrX()){ mrX = mrX.at(newLocation);}
-			else{
-				List<Player> newDetectives = new ArrayList<>(detectives);
-				for (Player det : newDetectives) {
-					if (det.piece().equals(move.commencedBy())) {
-						newDetectives.set(newDetectives.indexOf(det), det.at(newLocation));
-						detectives = List.copyOf(newDetectives);
-					}
-				}
-			}
+			return current.at(newLocation);
 		}
 
-		// Updates Tickets of the player that made a given move
-		public void updateTickets(Move move, Player current){
-			int doubleTicket  = 0;
-			// Uses visitor design pattern to access private fields
-			Iterable<Ticket> tickets = move.accept(new Visitor<Iterable<Ticket>>() {
-				// Check whether it's a single or double move
-				@Override public Iterable<Ticket> visit(SingleMove singleMove) {
-					List<Ticket> ticket = new ArrayList<>();
-					ticket.add(singleMove.ticket);
-					return ticket;
-				}
-				@Override public Iterable<Ticket> visit(DoubleMove doubleMove) {
-					mrX = mrX.use(Ticket.DOUBLE);
-					List<Ticket> tickets = new ArrayList<>();
-					tickets.add(doubleMove.ticket1);
-					tickets.add(doubleMove.ticket2);
-					return tickets;
-				}
-			});
-			// Takes used ticket(s) away from Mr X
-			if (current.isMrX()){ mrX = mrX.use(tickets); }
-			// Takes used ticket away form the detective and gives it to mrX
-			else{
-				mrX = mrX.give(tickets);
-				List<Player> newDetectives = new ArrayList<>(detectives);
-				newDetectives.set(newDetectives.indexOf(current), current.use(tickets));
-				detectives = List.copyOf(newDetectives);
+		// Returns the detectives with the given detective replacing the one with the same piece
+		public List<Player> updateDetectives(Player changed){
+			List<Player> newDetectives = new ArrayList<>(detectives);
+			for (int i = 0; i < newDetectives.size(); i++) {
+				if (newDetectives.get(i).piece().equals(changed.piece())) { newDetectives.set(i, changed); }
 			}
+			return List.copyOf(newDetectives);
 		}
 
-		// Updates Mr X's Travel Log
-		public void updateLog(Move move) {
-			List<LogEntry> newLog = new ArrayList<>(log);
+		// Returns Mr X's Travel Log with the entries of a given move appended
+		public ImmutableList<LogEntry> updateLog(Move move) {
 			List<LogEntry> addLog = move.accept(new Visitor<List<LogEntry>>() {
 
 				@Override public List<LogEntry> visit(SingleMove singleMove) {
 					// Checks if it's a reveal move
 					if (!setup.moves.get(log.size())) {
-						List<LogEntry> unrevealed = new ArrayList<>();
-						unrevealed.add(LogEntry.hidden(singleMove.ticket));
-						return unrevealed;
+						return List.of(LogEntry.hidden(singleMove.ticket));
 					} else {
-						List<LogEntry> revealed = new ArrayList<>();
-						revealed.add(LogEntry.reveal(singleMove.ticket, singleMove.destination));
-						return revealed;
+						return List.of(LogEntry.reveal(singleMove.ticket, singleMove.destination));
 					}
 				}
 				@Override public List<LogEntry> visit(DoubleMove doubleMove) {
@@ -379,81 +462,112 @@ public final class MyGameStateFactory implements Factory<GameState> {
 					return doubleLog;
 				}
 			});
-			newLog.addAll(addLog);
-			log = ImmutableList.copyOf(newLog);
+			return ImmutableList.<LogEntry>builder().addAll(log).addAll(addLog).build();
 		}
 
-		// Updates the game state, returns a new instance of MyGameState with modified parameters.
+		// Returns a new instance of MyGameState with the given move applied, this state is left untouched
+		// so its cached moves and winner stay valid.
 		@Nonnull @Override public GameState advance(Move move){
-			if (!moves.contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
-			if (!winner.isEmpty()) throw new IllegalArgumentException("Game is Over!");
-			updateLocation(move);
-			updateTickets(move, currentPlayer(move));
-			remaining = ImmutableSet.copyOf(removeAfterMove(currentPlayer(move)));
-			// Updates Mr X's Travel Log if the given move was made by him
-			if(move.commencedBy() == mrX.piece()){ updateLog(move);}
-			winner = ImmutableSet.copyOf(determineWinner());
-			return new MyGameState(setup, remaining, log, mrX, detectives);
+			if (!getAvailableMoves().contains(move)) throw new IllegalArgumentException("Illegal move: "+move);
+			if (!getWinner().isEmpty()) throw new IllegalArgumentException("Game is Over!");
+			Player current = currentPlayer(move);
+			// Moves the player and takes away the used ticket(s)
+			Player moved = updateLocation(move, current).use(move.tickets());
+			if (current.isMrX()) {
+				// Updates Mr X's Travel Log since the given move was made by him
+				return new MyGameState(this, removeAfterMove(current), updateLog(move), moved, detectives, occupied);
+			}
+			// The occupied set is shared with this state, so it is copied before the detective is moved in it
+			NodeSet nowOccupied = occupied.copy();
+			nowOccupied.move(current.location(), moved.location());
+			// Tickets used by detectives are given to Mr X
+			MyGameState next = new MyGameState(this, removeAfterMove(current), log, mrX.give(move.tickets()),
+					updateDetectives(moved), nowOccupied);
+			// The detectives still to move keep their moves, patched for the move just made
+			if (!next.remaining.contains(mrX.piece()))
+				next.detectiveMoves = patchDetectiveMoves(current.piece(), current.location(), moved.location());
+			return next;
 		}
-		private static Set<SingleMove> makeSingleMoves(GameSetup setup, List<Player> detectives, Player player, int source){
 
-			// Create an empty collection of some sort, say, HashSet, to store all the SingleMove we generate
-			Set<SingleMove> SingleMoveSet = new HashSet<>();
+		// Moves are taken from the interned moves of the graph, so the same move is always the same instance
+		private static Set<SingleMove> makeSingleMoves(TransportGraph graph, InternedMoves interned,
+				NodeSet occupied, Player player, int source){
+
+			// Create an empty collection of some sort, say, LinkedHashSet, to store all the SingleMove we generate
+			Set<SingleMove> SingleMoveSet = new LinkedHashSet<>();
 
-			for (int destination : setup.graph.adjacentNodes(source)) {
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
 				// Find out if destination is occupied by a detective
 				//  If the location is occupied, don't add to the collection of moves to return
-				if (detectives.stream().map(Player::location).noneMatch(location -> location.equals(destination))) {
-
-					for (Transport t : setup.graph.edgeValueOrDefault(source, destination, ImmutableSet.of())) {
-						// Find out if the player has the required tickets
-						//  If it does, construct a SingleMove and add it the collection of moves to return
-						if (player.has(t.requiredTicket())) {
-							SingleMoveSet.add(new SingleMove(player.piece(), source, t.requiredTicket(), destination));
-						}
-					}
-					// Consider the rules of secret moves here
-					// Add moves to the destination via a secret ticket if there are any left with the player
-					if (player.has(Ticket.SECRET)) {
-						SingleMoveSet.add(new SingleMove(player.piece(), source, Ticket.SECRET, destination));
-					}
+				if (!occupied.contains(graph.neighbour(edge))) {
+					addSingleMoves(SingleMoveSet, graph, interned, player, source, edge);
 				}
 			}
 
 			// Return the collection of moves
 			return SingleMoveSet;
 		}
-		private static Set<DoubleMove> makeDoubleMoves(GameSetup setup, List<Player> detectives, Player mrX, int source){
+
+		// Adds the moves the player can make along one edge, whether its destination is free is up to the caller
+		private static void addSingleMoves(Collection<SingleMove> SingleMoveSet, TransportGraph graph, InternedMoves interned,
+				Player player, int source, int edge){
+			for (Transport t : TRANSPORTS) {
+				// Find out if the edge has this transport and the player has the required tickets
+				//  If it does, construct a SingleMove and add it the collection of moves to return
+				if ((graph.transports(edge) & TransportGraph.mask(t)) != 0 && player.has(t.requiredTicket())) {
+					SingleMoveSet.add(interned.singleAlong(player.piece(), source, edge, t.requiredTicket()));
+				}
+			}
+			// Consider the rules of secret moves here
+			// Add moves to the destination via a secret ticket if there are any left with the player
+			if (player.has(Ticket.SECRET)) {
+				SingleMoveSet.add(interned.singleAlong(player.piece(), source, edge, Ticket.SECRET));
+			}
+		}
+		private static Set<DoubleMove> makeDoubleMoves(GameSetup setup, TransportGraph graph, InternedMoves interned,
+				NodeSet occupied, Player mrX, int source){
 
 			if (mrX.isDetective()) throw new IllegalArgumentException("Only MrX can do double move");
 
 			// Set containing all the available double moves
-			Set<DoubleMove> DoubleMoveSet = new HashSet<>();
-			// Set containing all the available single moves from mr X's starting location
-			Set<SingleMove> SingleMoveSetInitial = new HashSet<>();
-			// Set containing all the available single moves, from each available single move from SingleMoveSetInitial
-			Set<SingleMove> SingleMoveSetSecond = new HashSet<>();
-
-			SingleMoveSetInitial = makeSingleMoves(setup, detectives, mrX, source);
-
-			// Iterates through the available single moves from the detectives location, and for each find all the possible
-			// double moves.
-			for (SingleMove singleMove1 : SingleMoveSetInitial) {
-				SingleMoveSetSecond = makeSingleMoves(setup, detectives, mrX, singleMove1.destination);
-				for (SingleMove singleMove2 : SingleMoveSetSecond) {
-					if (mrX.has(Ticket.DOUBLE)) {
-						// sets condition to check if has enough tickets and  max amount of moves available to produce a double move
-						if (((singleMove1.ticket != singleMove2.ticket)
-						|| (mrX.hasAtLeast(singleMove2.ticket, 2)))
-						&& (setup.moves.size()>=2)) {
-							DoubleMoveSet.add(new DoubleMove(mrX.piece(), source, singleMove1.ticket, singleMove1.destination,
-								singleMove2.ticket, singleMove2.destination));
+			Set<DoubleMove> DoubleMoveSet = new LinkedHashSet<>();
+			if (!mrX.has(Ticket.DOUBLE) || setup.moves.size() < 2) return DoubleMoveSet;
+
+			// Goes along each free edge from mr X's location with each ticket he can take it with, the same way as
+			// makeSingleMoves, then along each free edge from there. The edge indices are kept for the interned moves.
+			for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+				int destination1 = graph.neighbour(edge1);
+				if (occupied.contains(destination1)) continue;
+				int tickets1 = ticketsFor(graph, mrX, edge1);
+				for (Ticket ticket1 : TICKETS) {
+					if ((tickets1 & (1 << ticket1.ordinal())) == 0) continue;
+					for (int edge2 = graph.start(destination1); edge2 < graph.end(destination1); edge2++) {
+						if (occupied.contains(graph.neighbour(edge2))) continue;
+						int tickets2 = ticketsFor(graph, mrX, edge2);
+						for (Ticket ticket2 : TICKETS) {
+							if ((tickets2 & (1 << ticket2.ordinal())) == 0) continue;
+							// sets condition to check if has enough tickets to produce a double move
+							if (ticket1 != ticket2 || mrX.hasAtLeast(ticket2, 2)) {
+								DoubleMoveSet.add(interned.doubleAlong(mrX.piece(), source, edge1, ticket1, edge2, ticket2));
+							}
 						}
 					}
 				}
 			}
 			return DoubleMoveSet;
 		}
+
+		// Returns the tickets (a bit per Ticket.ordinal()) the player can take along an edge, the same ones
+		// addSingleMoves makes moves with
+		private static int ticketsFor(TransportGraph graph, Player player, int edge) {
+			int bits = 0;
+			for (Transport t : TRANSPORTS) {
+				if ((graph.transports(edge) & TransportGraph.mask(t)) != 0 && player.has(t.requiredTicket()))
+					bits |= 1 << t.requiredTicket().ordinal();
+			}
+			if (player.has(Ticket.SECRET)) bits |= 1 << Ticket.SECRET.ordinal();
+			return bits;
+		}
 	}
 	@Nonnull @Override public GameState build(
 			GameSetup setup,
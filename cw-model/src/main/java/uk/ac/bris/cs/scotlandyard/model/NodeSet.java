@@ -0,0 +1,212 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Piece.Detective;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * A mutable set of nodes of a game graph stored as a bitset, one bit per node; the 199 nodes of the
+ * standard map fit in four longs.
+ * <br>
+ * Membership is a single bit test and combining sets (union, difference, intersection) is done a
+ * word at a time, which makes questions like "which of Mr X's destinations can a detective reach
+ * next turn" a handful of bitwise operations. See {@link #addReachable(TransportGraph, int, int)}
+ * and {@link #detectiveThreats(Board)}.
+ * <br>
+ * Sets passed between immutable game states are never changed once shared, copy them with
+ * {@link #copy()} first.
+ */
+public final class NodeSet {
+
+	private final long[] words;
+
+	/**
+	 * @param graph the graph whose nodes the set will hold
+	 */
+	public NodeSet(@Nonnull TransportGraph graph) {
+		this.words = new long[(graph.nodeBound() + Long.SIZE - 1) / Long.SIZE];
+	}
+
+	private NodeSet(long[] words) { this.words = words; }
+
+	/**
+	 * @return a new set with the same nodes
+	 */
+	@Nonnull public NodeSet copy() { return new NodeSet(words.clone()); }
+
+	/**
+	 * @param node the node
+	 * @return whether the node is in the set
+	 */
+	public boolean contains(int node) {
+		int word = node >>> 6;
+		return node >= 0 && word < words.length && (words[word] & (1L << node)) != 0;
+	}
+
+	/**
+	 * @param node the node, must be part of the graph
+	 */
+	public void add(int node) { words[node >>> 6] |= 1L << node; }
+
+	/**
+	 * @param node the node, must be part of the graph
+	 */
+	public void remove(int node) { words[node >>> 6] &= ~(1L << node); }
+
+	/**
+	 * Removes the first node and adds the second, for a piece moving between them
+	 *
+	 * @param from the node left
+	 * @param to the node arrived at
+	 */
+	public void move(int from, int to) {
+		remove(from);
+		add(to);
+	}
+
+	/**
+	 * Removes all nodes
+	 */
+	public void clear() { Arrays.fill(words, 0); }
+
+	/**
+	 * @param other a set of the same graph
+	 */
+	public void addAll(@Nonnull NodeSet other) {
+		for (int i = 0; i < words.length; i++) words[i] |= other.words[i];
+	}
+
+	/**
+	 * @param other a set of the same graph
+	 */
+	public void removeAll(@Nonnull NodeSet other) {
+		for (int i = 0; i < words.length; i++) words[i] &= ~other.words[i];
+	}
+
+	/**
+	 * @param other a set of the same graph
+	 */
+	public void retainAll(@Nonnull NodeSet other) {
+		for (int i = 0; i < words.length; i++) words[i] &= other.words[i];
+	}
+
+	/**
+	 * @param other a set of the same graph
+	 * @return whether the two sets have a node in common
+	 */
+	public boolean intersects(@Nonnull NodeSet other) {
+		for (int i = 0; i < words.length; i++) {
+			if ((words[i] & other.words[i]) != 0) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return whether the set has no nodes
+	 */
+	public boolean isEmpty() {
+		for (long word : words) {
+			if (word != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of nodes in the set
+	 */
+	public int size() {
+		int size = 0;
+		for (long word : words) size += Long.bitCount(word);
+		return size;
+	}
+
+	/**
+	 * Iterate with {@code for (int n = set.next(0); n >= 0; n = set.next(n + 1))}
+	 *
+	 * @param from the node to start looking from
+	 * @return the smallest node in the set that is at least {@code from}; -1 if there is none
+	 */
+	public int next(int from) {
+		int word = from >>> 6;
+		if (from < 0 || word >= words.length) return -1;
+		long bits = words[word] & (-1L << from);
+		while (bits == 0) {
+			if (++word == words.length) return -1;
+			bits = words[word];
+		}
+		return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Adds every node one step away from the given node along a route with any of the given
+	 * transports
+	 *
+	 * @param graph the graph
+	 * @param node the node, must be part of the graph
+	 * @param transports a bitmask of transports, see {@link TransportGraph#mask}
+	 */
+	public void addReachable(@Nonnull TransportGraph graph, int node, int transports) {
+		for (int edge = graph.start(node); edge < graph.end(node); edge++) {
+			if ((graph.transports(edge) & transports) != 0) add(graph.neighbour(edge));
+		}
+	}
+
+	/**
+	 * @param tickets the tickets of a player
+	 * @return the bitmask of transports the player holds at least one ticket for
+	 */
+	public static int usableTransports(@Nonnull Board.TicketBoard tickets) {
+		int transports = 0;
+		for (Ticket ticket : Ticket.values()) {
+			if (tickets.getCount(ticket) > 0) transports |= TransportGraph.ticketMask(ticket);
+		}
+		return transports;
+	}
+
+	/**
+	 * @param board the board
+	 * @return the nodes any detective can move to in one step with the tickets it holds
+	 */
+	@Nonnull public static NodeSet detectiveThreats(@Nonnull Board board) {
+		TransportGraph graph = TransportGraph.of(board.getSetup());
+		NodeSet threats = new NodeSet(graph);
+		for (Piece piece : board.getPlayers()) {
+			if (!(piece instanceof Detective)) continue;
+			int location = board.getDetectiveLocation((Detective) piece).orElseThrow();
+			threats.addReachable(graph, location, usableTransports(board.getPlayerTickets(piece).orElseThrow()));
+		}
+		return threats;
+	}
+
+	/**
+	 * @param board the board
+	 * @return the nodes the detectives are standing on
+	 */
+	@Nonnull public static NodeSet detectiveLocations(@Nonnull Board board) {
+		NodeSet occupied = new NodeSet(TransportGraph.of(board.getSetup()));
+		for (Piece piece : board.getPlayers()) {
+			if (piece instanceof Detective) occupied.add(board.getDetectiveLocation((Detective) piece).orElseThrow());
+		}
+		return occupied;
+	}
+
+	@Override public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		return Arrays.equals(words, ((NodeSet) o).words);
+	}
+
+	@Override public int hashCode() { return Arrays.hashCode(words); }
+
+	@Override public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int n = next(0); n >= 0; n = next(n + 1)) {
+			if (builder.length() > 1) builder.append(", ");
+			builder.append(n);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,362 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.*;
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.Move.*;
+import uk.ac.bris.cs.scotlandyard.model.Piece.*;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.*;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Factory;
+
+/**
+ * cw-model
+ * A game state factory with the same rules as {@link MyGameStateFactory}, but whose states keep
+ * each player's location and tickets packed into a single long instead of {@link Player} objects.
+ * Meant for simulations that keep a large number of states around at once.
+ */
+public final class PackedGameStateFactory implements Factory<GameState> {
+
+	// Layout of a packed player: the location in the lowest 16 bits, followed by a 9 bit count
+	// for every ticket in Ticket.ordinal() order
+	private static final int LOCATION_BITS = 16;
+	private static final long LOCATION_MASK = (1L << LOCATION_BITS) - 1;
+	private static final int TICKET_BITS = 9;
+	private static final long TICKET_MASK = (1L << TICKET_BITS) - 1;
+	private static final Ticket[] TICKETS = Ticket.values();
+	private static final Transport[] TRANSPORTS = Transport.values();
+
+	private static int shift(Ticket ticket) { return LOCATION_BITS + ticket.ordinal() * TICKET_BITS; }
+	private static int location(long player) { return (int) (player & LOCATION_MASK); }
+	private static int count(long player, Ticket ticket) {
+		return (int) ((player >>> shift(ticket)) & TICKET_MASK);
+	}
+	private static long at(long player, int location) { return (player & ~LOCATION_MASK) | location; }
+	// Adds n (possibly negative) tickets, the caller makes sure the count stays in range
+	private static long add(long player, Ticket ticket, int n) { return player + ((long) n << shift(ticket)); }
+
+	private static long pack(Player player) {
+		long packed = player.location();
+		for (Ticket ticket : TICKETS) {
+			packed = add(packed, ticket, player.tickets().getOrDefault(ticket, 0));
+		}
+		return packed;
+	}
+
+	// Everything that stays the same for a whole game, shared between all of its states
+	private static final class Game {
+		private final GameSetup setup;
+		private final TransportGraph graph;
+		private final InternedMoves interned;
+		// Index 0 is always Mr X, the same indices are used for the packed players of a state
+		private final Piece[] pieces;
+		private final ImmutableSet<Piece> players;
+		private final ImmutableSet<Piece> mrXWins;
+		private final ImmutableSet<Piece> detectivesWin;
+
+		private Game(GameSetup setup, Piece[] pieces) {
+			this.setup = setup;
+			this.graph = TransportGraph.of(setup);
+			this.interned = InternedMoves.of(setup);
+			this.pieces = pieces;
+			this.players = ImmutableSet.copyOf(pieces);
+			this.mrXWins = ImmutableSet.of(pieces[0]);
+			this.detectivesWin = ImmutableSet.copyOf(Arrays.copyOfRange(pieces, 1, pieces.length));
+		}
+
+		// Returns the index of the given piece, or -1 if it is not part of the game
+		private int indexOf(Piece piece) {
+			for (int i = 0; i < pieces.length; i++) {
+				if (pieces[i] == piece) return i;
+			}
+			return -1;
+		}
+	}
+
+	private static final class PackedGameState implements GameState {
+		private final Game game;
+		private final long[] players;
+		// Bit i is set if the player at index i still has to move in this round
+		private final int remaining;
+		private final ImmutableList<LogEntry> log;
+		// Computed on first request and cached, a state never changes once built
+		private ImmutableSet<Piece> winner;
+		private ImmutableSet<Move> moves;
+
+		private PackedGameState(Game game, long[] players, int remaining, ImmutableList<LogEntry> log) {
+			this.game = game;
+			this.players = players;
+			this.remaining = remaining;
+			this.log = log;
+		}
+
+		@Nonnull @Override public GameSetup getSetup() { return game.setup; }
+
+		@Nonnull @Override public ImmutableSet<Piece> getPlayers() { return game.players; }
+
+		@Nonnull @Override public Optional<Integer> getDetectiveLocation(Detective detective) {
+			int i = game.indexOf(detective);
+			if (i < 1) return Optional.empty();
+			return Optional.of(location(players[i]));
+		}
+
+		@Nonnull @Override public Optional<TicketBoard> getPlayerTickets(Piece piece) {
+			int i = game.indexOf(piece);
+			if (i < 0) return Optional.empty();
+			long player = players[i];
+			return Optional.of(ticket -> count(player, ticket));
+		}
+
+		@Nonnull @Override public ImmutableList<LogEntry> getMrXTravelLog() { return log; }
+
+		// Same rules as MyGameState.determineWinner
+		@Nonnull @Override public ImmutableSet<Piece> getWinner() {
+			if (winner != null) return winner;
+			boolean mrXTurn = (remaining & 1) != 0;
+			boolean detWon = false;
+			boolean detHaveTickets = false;
+			for (int i = 1; i < players.length; i++) {
+				if (location(players[i]) == location(players[0])) detWon = true;
+				if (count(players[i], Ticket.TAXI) > 0
+						|| count(players[i], Ticket.BUS) > 0
+						|| count(players[i], Ticket.UNDERGROUND) > 0) detHaveTickets = true;
+			}
+			if (!detWon && mrXTurn && !canMove(0)) detWon = true;
+
+			if (detWon) winner = game.detectivesWin;
+			else if (!detHaveTickets) winner = game.mrXWins;
+			else if (!mrXTurn && !anyDetectiveCanMove()) winner = game.mrXWins;
+			else if (mrXTurn && log.size() == game.setup.moves.size()) winner = game.mrXWins;
+			else winner = ImmutableSet.of();
+			return winner;
+		}
+
+		@Nonnull @Override public ImmutableSet<Move> getAvailableMoves() {
+			if (moves != null) return moves;
+			if (!getWinner().isEmpty()) return moves = ImmutableSet.of();
+			var builder = ImmutableSet.<Move>builder();
+			for (int i = 0; i < players.length; i++) {
+				if ((remaining & (1 << i)) == 0) continue;
+				addSingleMoves(builder, i, location(players[i]));
+				// Mr X can only make a double move if there are at least 2 log cells left
+				if (i == 0 && log.size() <= game.setup.moves.size() - 2) addDoubleMoves(builder);
+			}
+			return moves = builder.build();
+		}
+
+		private void addSingleMoves(ImmutableSet.Builder<Move> builder, int i, int source) {
+			long player = players[i];
+			var graph = game.graph;
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				if (isOccupied(graph.neighbour(edge))) continue;
+				int bits = ticketsFor(player, edge);
+				for (Ticket ticket : TICKETS) {
+					if ((bits & (1 << ticket.ordinal())) != 0)
+						builder.add(game.interned.singleAlong(game.pieces[i], source, edge, ticket));
+				}
+			}
+		}
+
+		private void addDoubleMoves(ImmutableSet.Builder<Move> builder) {
+			long mrX = players[0];
+			if (count(mrX, Ticket.DOUBLE) == 0) return;
+			int source = location(mrX);
+			var graph = game.graph;
+			for (int edge1 = graph.start(source); edge1 < graph.end(source); edge1++) {
+				int destination1 = graph.neighbour(edge1);
+				if (isOccupied(destination1)) continue;
+				int bits1 = ticketsFor(mrX, edge1);
+				for (Ticket ticket1 : TICKETS) {
+					if ((bits1 & (1 << ticket1.ordinal())) == 0) continue;
+					for (int edge2 = graph.start(destination1); edge2 < graph.end(destination1); edge2++) {
+						if (isOccupied(graph.neighbour(edge2))) continue;
+						int bits2 = ticketsFor(mrX, edge2);
+						for (Ticket ticket2 : TICKETS) {
+							if ((bits2 & (1 << ticket2.ordinal())) == 0) continue;
+							if (ticket1 != ticket2 || count(mrX, ticket2) >= 2)
+								builder.add(game.interned.doubleAlong(game.pieces[0], source, edge1, ticket1, edge2, ticket2));
+						}
+					}
+				}
+			}
+		}
+
+		// Returns the tickets (a bit per Ticket.ordinal()) the player can take along an edge
+		private int ticketsFor(long player, int edge) {
+			var graph = game.graph;
+			int bits = 0;
+			for (Transport t : TRANSPORTS) {
+				if ((graph.transports(edge) & TransportGraph.mask(t)) != 0 && count(player, t.requiredTicket()) > 0)
+					bits |= 1 << t.requiredTicket().ordinal();
+			}
+			if (count(player, Ticket.SECRET) > 0) bits |= 1 << Ticket.SECRET.ordinal();
+			return bits;
+		}
+
+		// Same as MyGameState.hasAnyMove, stops at the first legal move found
+		@Override public boolean hasAnyMove(@Nonnull Piece piece) {
+			int i = game.indexOf(piece);
+			if (i < 0 || (remaining & (1 << i)) == 0 || !getWinner().isEmpty()) return false;
+			return canMove(i);
+		}
+
+		@Nonnull @Override public ImmutableSet<Piece> movablePieces() {
+			var pieces = ImmutableSet.<Piece>builder();
+			for (int i = 0; i < game.pieces.length; i++) {
+				if (hasAnyMove(game.pieces[i])) pieces.add(game.pieces[i]);
+			}
+			return pieces.build();
+		}
+
+		// Checks whether any detective is standing at the given location
+		private boolean isOccupied(int location) {
+			for (int i = 1; i < players.length; i++) {
+				if (location(players[i]) == location) return true;
+			}
+			return false;
+		}
+
+		// Checks whether a packed player could use the given ticket to travel between two locations,
+		// a double move is checked as two of these against the tickets held before the move
+		private boolean canTravel(long player, int source, Ticket ticket, int destination) {
+			if (count(player, ticket) == 0 || isOccupied(destination)) return false;
+			return (game.graph.transportsBetween(source, destination) & TransportGraph.ticketMask(ticket)) != 0;
+		}
+
+		// Checks whether the player at index i has at least one legal move, stops at the first one found
+		private boolean canMove(int i) {
+			long player = players[i];
+			int source = location(player);
+			var graph = game.graph;
+			// Transports this player still holds a ticket for
+			int usable = 0;
+			for (Ticket ticket : TICKETS) {
+				if (count(player, ticket) > 0) usable |= TransportGraph.ticketMask(ticket);
+			}
+			for (int edge = graph.start(source); edge < graph.end(source); edge++) {
+				if ((graph.transports(edge) & usable) != 0 && !isOccupied(graph.neighbour(edge))) return true;
+			}
+			return false;
+		}
+
+		private boolean anyDetectiveCanMove() {
+			for (int i = 1; i < players.length; i++) {
+				if (canMove(i)) return true;
+			}
+			return false;
+		}
+
+		// Checks a move against the rules directly, without generating all the available moves
+		private boolean isLegal(Move move) {
+			int i = game.indexOf(move.commencedBy());
+			if (i < 0 || (remaining & (1 << i)) == 0) return false;
+			long player = players[i];
+			int source = location(player);
+			if (move.source() != source) return false;
+			return move.accept(new Visitor<Boolean>() {
+				@Override public Boolean visit(SingleMove m) {
+					return canTravel(player, source, m.ticket, m.destination);
+				}
+				@Override public Boolean visit(DoubleMove m) {
+					return i == 0
+							&& count(player, Ticket.DOUBLE) > 0
+							&& log.size() <= game.setup.moves.size() - 2
+							&& (m.ticket1 != m.ticket2 || count(player, m.ticket2) >= 2)
+							&& canTravel(player, source, m.ticket1, m.destination1)
+							&& canTravel(player, m.destination1, m.ticket2, m.destination2);
+				}
+			});
+		}
+
+		private LogEntry logEntry(int round, Ticket ticket, int destination) {
+			return game.setup.moves.get(round) ? LogEntry.reveal(ticket, destination) : LogEntry.hidden(ticket);
+		}
+
+		@Nonnull @Override public GameState advance(Move move) {
+			if (!getWinner().isEmpty()) throw new IllegalArgumentException("Game is Over!");
+			if (!isLegal(move)) throw new IllegalArgumentException("Illegal move: " + move);
+			long[] next = players.clone();
+			int i = game.indexOf(move.commencedBy());
+			if (i == 0) {
+				ImmutableList<LogEntry> nextLog = move.accept(new Visitor<ImmutableList<LogEntry>>() {
+					@Override public ImmutableList<LogEntry> visit(SingleMove m) {
+						next[0] = at(add(next[0], m.ticket, -1), m.destination);
+						return ImmutableList.<LogEntry>builder().addAll(log)
+								.add(logEntry(log.size(), m.ticket, m.destination)).build();
+					}
+					@Override public ImmutableList<LogEntry> visit(DoubleMove m) {
+						long mrX = add(next[0], Ticket.DOUBLE, -1);
+						mrX = add(add(mrX, m.ticket1, -1), m.ticket2, -1);
+						next[0] = at(mrX, m.destination2);
+						return ImmutableList.<LogEntry>builder().addAll(log)
+								.add(logEntry(log.size(), m.ticket1, m.destination1))
+								.add(logEntry(log.size() + 1, m.ticket2, m.destination2)).build();
+					}
+				});
+				// The detectives' positions are unchanged by Mr X's move, so this state can tell who can move
+				int nextRemaining = 0;
+				for (int d = 1; d < players.length; d++) {
+					if (canMove(d)) nextRemaining |= 1 << d;
+				}
+				return new PackedGameState(game, next, nextRemaining, nextLog);
+			}
+			// Detectives only make single moves, the used ticket is given to Mr X
+			var m = (SingleMove) move;
+			next[i] = at(add(next[i], m.ticket, -1), m.destination);
+			next[0] = add(next[0], m.ticket, 1);
+			int nextRemaining = remaining & ~(1 << i);
+			if (nextRemaining == 0) nextRemaining = 1;
+			return new PackedGameState(game, next, nextRemaining, log);
+		}
+	}
+
+	@Nonnull @Override public GameState build(
+			GameSetup setup,
+			Player mrX,
+			ImmutableList<Player> detectives) {
+		Objects.requireNonNull(setup);
+		if (!mrX.isMrX()) throw new IllegalArgumentException("MrX is not the black piece!");
+		if (setup.graph.nodes().isEmpty()) throw new IllegalArgumentException("Graph is empty!");
+		if (setup.moves.isEmpty()) throw new IllegalArgumentException("Moves is empty!");
+
+		Set<Piece> pieces = new HashSet<>();
+		Set<Integer> locations = new HashSet<>();
+		for (Player det : detectives) {
+			if (det.isMrX()) throw new IllegalArgumentException("Detective player is not a detective piece!");
+			if (!pieces.add(det.piece())) throw new IllegalArgumentException("Duplicate game piece!");
+			if (!locations.add(det.location())) throw new IllegalArgumentException("Detectives locations overlap");
+			if (det.has(Ticket.SECRET) || det.has(Ticket.DOUBLE))
+				throw new IllegalArgumentException("Detectives can't have secret or double tickets");
+		}
+
+		// Locations and ticket counts must fit their packed fields, tickets only ever move between
+		// players so bounding the total of each ticket is enough
+		if (TransportGraph.of(setup).nodeBound() > LOCATION_MASK + 1)
+			throw new IllegalArgumentException("Locations do not fit in " + LOCATION_BITS + " bits");
+		List<Player> all = new ArrayList<>();
+		all.add(mrX);
+		all.addAll(detectives);
+		if (all.stream().map(Player::location).anyMatch(l -> !TransportGraph.of(setup).contains(l)))
+			throw new IllegalArgumentException("Player location is not on the graph!");
+		for (Ticket ticket : TICKETS) {
+			int total = 0;
+			for (Player player : all) {
+				int n = player.tickets().getOrDefault(ticket, 0);
+				if (n < 0) throw new IllegalArgumentException("Negative " + ticket + " count for " + player);
+				total += n;
+			}
+			if (total > TICKET_MASK)
+				throw new IllegalArgumentException("Too many " + ticket + " tickets in the game: " + total);
+		}
+
+		Piece[] order = new Piece[all.size()];
+		long[] players = new long[all.size()];
+		for (int i = 0; i < all.size(); i++) {
+			order[i] = all.get(i).piece();
+			players[i] = pack(all.get(i));
+		}
+		return new PackedGameState(new Game(setup, order), players, 1, ImmutableList.of());
+	}
+}
@@ -2,7 +2,7 @@ package uk.ac.bris.cs.scotlandyard.model;
 
 import com.google.common.collect.ImmutableMap;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Objects;
 
 import javax.annotation.Nonnull;
@@ -12,11 +12,21 @@ import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
 /**
  * A POJO representing an immutable player of the ScotlandYard game.
  * Each player contains the {@link Piece} (coloured counter), {@link Ticket}s, and the location.
+ * <br>
+ * Ticket counts are kept in an array indexed by {@link Ticket#ordinal()}, so giving, using and
+ * checking tickets takes constant time; the {@link #tickets()} map is only built when asked for.
  */
 public final class Player {
+	private static final Ticket[] TICKETS = Ticket.values();
+
 	private final Piece piece;
-	private final ImmutableMap<Ticket, Integer> tickets;
+	// Count of each ticket by ordinal, 0 for tickets that aren't in the map
+	private final int[] counts;
+	// A bit per ticket ordinal that is a key of the map, tickets that aren't can't be given
+	private final int present;
 	private final int location;
+	// The map view of the counts, built on first request
+	private ImmutableMap<Ticket, Integer> tickets;
 
 	public Player(@Nonnull Piece piece,
 	              @Nonnull ImmutableMap<Ticket, Integer> tickets,
@@ -24,6 +34,22 @@ public final class Player {
 		this.piece = Objects.requireNonNull(piece);
 		this.tickets = Objects.requireNonNull(tickets);
 		this.location = location;
+		this.counts = new int[TICKETS.length];
+		int present = 0;
+		for (var entry : tickets.entrySet()) {
+			counts[entry.getKey().ordinal()] = entry.getValue();
+			present |= 1 << entry.getKey().ordinal();
+		}
+		this.present = present;
+	}
+
+	// Shares the given counts, which must never be changed afterwards
+	private Player(Piece piece, int[] counts, int present, int location, ImmutableMap<Ticket, Integer> tickets) {
+		this.piece = piece;
+		this.counts = counts;
+		this.present = present;
+		this.location = location;
+		this.tickets = tickets;
 	}
 	/**
 	 * @return the piece
@@ -40,7 +66,17 @@ public final class Player {
 	/**
 	 * @return the ticket
 	 */
-	@Nonnull public ImmutableMap<Ticket, Integer> tickets() { return tickets; }
+	@Nonnull public ImmutableMap<Ticket, Integer> tickets() {
+		var map = tickets;
+		if (map == null) {
+			var builder = ImmutableMap.<Ticket, Integer>builder();
+			for (Ticket t : TICKETS) {
+				if ((present & (1 << t.ordinal())) != 0) builder.put(t, counts[t.ordinal()]);
+			}
+			tickets = map = builder.build();
+		}
+		return map;
+	}
 	/**
 	 * @return the location
 	 */
@@ -50,7 +86,7 @@ public final class Player {
 	 * @return whether the player has the given ticket
 	 */
 	public boolean has(@Nonnull Ticket ticket) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) != 0;
+		return counts[ticket.ordinal()] != 0;
 	}
 	/**
 	 * @param ticket the ticket
@@ -58,7 +94,7 @@ public final class Player {
 	 * @return whether the player has &gt;= the required numbers of the given ticket
 	 */
 	public boolean hasAtLeast(@Nonnull Ticket ticket, int count) {
-		return tickets.getOrDefault(Objects.requireNonNull(ticket), 0) >= count;
+		return counts[ticket.ordinal()] >= count;
 	}
 	/**
 	 * See {@link #give(Ticket)}
@@ -67,18 +103,21 @@ public final class Player {
 	 * @return a new player with one more of the given tickets
 	 */
 	@Nonnull public Player give(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.give(t);
-		return x;
+		int[] given = counts.clone();
+		for (Ticket t : tickets) {
+			if ((present & (1 << t.ordinal())) != 0) given[t.ordinal()]++;
+		}
+		return new Player(piece, given, present, location, null);
 	}
 	/**
 	 * @param ticket the ticket
 	 * @return a new player with one more of the given ticket
 	 */
 	@Nonnull public Player give(@Nonnull Ticket ticket) {
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n + 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		if ((present & (1 << ticket.ordinal())) == 0) return this;
+		int[] given = counts.clone();
+		given[ticket.ordinal()]++;
+		return new Player(piece, given, present, location, null);
 	}
 	/**
 	 * See {@link #use(Ticket)}
@@ -87,9 +126,13 @@ public final class Player {
 	 * @return a new player with one less of the given tickets
 	 */
 	@Nonnull public Player use(@Nonnull Iterable<Ticket> tickets) {
-		var x = this;
-		for (Ticket t : tickets) x = x.use(t);
-		return x;
+		int[] used = counts.clone();
+		for (Ticket t : tickets) {
+			if (used[t.ordinal()] == 0)
+				throw new IllegalArgumentException("No " + t + " remaining");
+			used[t.ordinal()]--;
+		}
+		return new Player(piece, used, present, location, null);
 	}
 	/**
 	 * @param ticket the ticket
@@ -98,22 +141,24 @@ public final class Player {
 	@Nonnull public Player use(@Nonnull Ticket ticket) {
 		if (!has(ticket))
 			throw new IllegalArgumentException("No " + ticket + " remaining");
-		var map = new HashMap<>(tickets);
-		map.computeIfPresent(ticket, (t, n) -> n - 1);
-		return new Player(piece, ImmutableMap.copyOf(map), location);
+		int[] used = counts.clone();
+		used[ticket.ordinal()]--;
+		return new Player(piece, used, present, location, null);
 	}
 	/**
 	 * @param newLocation the location
 	 * @return a new player at the given location
 	 */
-	@Nonnull public Player at(int newLocation) { return new Player(piece, tickets, newLocation); }
+	@Nonnull public Player at(int newLocation) {
+		return new Player(piece, counts, present, newLocation, tickets);
+	}
 	@Override public boolean equals(Object o) {
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
 		Player that = (Player) o;
 		return location == that.location && piece == that.piece &&
-				Objects.equals(tickets, that.tickets);
+				present == that.present && Arrays.equals(counts, that.counts);
 	}
-	@Override public int hashCode() { return Objects.hash(piece, tickets, location); }
-	@Override public String toString() { return piece + "@" + location + "(" + tickets + ")"; }
+	@Override public int hashCode() { return Objects.hash(piece, present, Arrays.hashCode(counts), location); }
+	@Override public String toString() { return piece + "@" + location + "(" + tickets() + ")"; }
 }
@@ -0,0 +1,166 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+
+import com.google.common.collect.ImmutableSet;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+
+/**
+ * The nodes Mr X could be at as far as the detectives know, worked out from his travel log as it
+ * grows.
+ * <br>
+ * Each log entry moves the set one step along the transport of the ticket used (any transport
+ * for {@link Ticket#SECRET}), and a reveal shrinks it to the revealed node. The nodes the
+ * detectives stand on are taken out, Mr X would have been caught there. Applying one entry
+ * costs one pass over the edges of the nodes in the set.
+ * <br>
+ * The set never leaves out where Mr X really is, as long as he started at one of the start
+ * nodes; it can include nodes he can't be at, tickets he has run out of are not taken into
+ * account.
+ * <br>
+ * The tracker is mutable, keep one per game and call {@link #update(Board)} every turn, or use
+ * {@link #of(Board)} to work it out from the whole log at once.
+ */
+public final class PossibleLocations {
+
+	private final TransportGraph graph;
+	private NodeSet nodes;
+	private NodeSet next;
+	private int entries;
+
+	/**
+	 * @param setup the game setup
+	 * @param start the nodes Mr X may have started at; nodes not on the graph are ignored
+	 */
+	public PossibleLocations(@Nonnull GameSetup setup, @Nonnull Collection<Integer> start) {
+		this.graph = TransportGraph.of(setup);
+		this.nodes = new NodeSet(graph);
+		this.next = new NodeSet(graph);
+		for (int node : start) {
+			if (graph.contains(node)) nodes.add(node);
+		}
+	}
+
+	private PossibleLocations(PossibleLocations other) {
+		this.graph = other.graph;
+		this.nodes = other.nodes.copy();
+		this.next = new NodeSet(graph);
+		this.entries = other.entries;
+	}
+
+	/**
+	 * @param board the board, its travel log and detectives' locations are used
+	 * @return the tracker for the board, assuming Mr X could have started at any node
+	 */
+	@Nonnull public static PossibleLocations of(@Nonnull Board board) {
+		ImmutableSet.Builder<Integer> all = ImmutableSet.builder();
+		TransportGraph graph = TransportGraph.of(board.getSetup());
+		for (int node = 0; node < graph.nodeBound(); node++) {
+			if (graph.contains(node)) all.add(node);
+		}
+		return of(board, all.build());
+	}
+
+	/**
+	 * @param board the board, its travel log and detectives' locations are used
+	 * @param start the nodes Mr X may have started at, such as {@link ScotlandYard#MRX_LOCATIONS}
+	 * @return the tracker for the board
+	 */
+	@Nonnull public static PossibleLocations of(@Nonnull Board board, @Nonnull Collection<Integer> start) {
+		return new PossibleLocations(board.getSetup(), start).update(board);
+	}
+
+	/**
+	 * @return a tracker that starts out the same as this one and is updated separately
+	 */
+	@Nonnull public PossibleLocations copy() { return new PossibleLocations(this); }
+
+	/**
+	 * Brings the set up to date with the board: the log entries not applied yet are applied, then
+	 * the nodes the detectives are on are taken out.
+	 * <br>
+	 * The detectives' locations are only known for now, so they are only taken out after the last
+	 * entry; calling this every turn keeps the set smaller than calling it now and then.
+	 *
+	 * @param board a board of the same game, at least as far on as the last one given
+	 * @return this tracker
+	 * @throws IllegalArgumentException if the board's log is shorter than the entries applied
+	 */
+	@Nonnull public PossibleLocations update(@Nonnull Board board) {
+		var log = board.getMrXTravelLog();
+		if (log.size() < entries)
+			throw new IllegalArgumentException("The log has " + log.size() + " entries, " + entries + " have been applied");
+		for (int i = entries; i < log.size(); i++) advance(log.get(i));
+		nodes.removeAll(NodeSet.detectiveLocations(board));
+		return this;
+	}
+
+	/**
+	 * Moves the set along the next entry of the log
+	 *
+	 * @param entry the entry
+	 * @throws IllegalArgumentException if the entry's ticket is {@link Ticket#DOUBLE}, which a log
+	 * never has
+	 */
+	public void advance(@Nonnull LogEntry entry) {
+		if (entry.ticket() == Ticket.DOUBLE)
+			throw new IllegalArgumentException("Log entries have the tickets of single moves");
+		entries++;
+		if (entry.location().isPresent()) {
+			nodes.clear();
+			nodes.add(entry.location().get());
+			return;
+		}
+		int transports = TransportGraph.ticketMask(entry.ticket());
+		next.clear();
+		for (int node = nodes.next(0); node >= 0; node = nodes.next(node + 1))
+			next.addReachable(graph, node, transports);
+		NodeSet previous = nodes;
+		nodes = next;
+		next = previous;
+	}
+
+	/**
+	 * Takes nodes out of the set, for nodes Mr X is known not to be at
+	 *
+	 * @param excluded the nodes
+	 */
+	public void exclude(@Nonnull NodeSet excluded) { nodes.removeAll(excluded); }
+
+	/**
+	 * @return the number of log entries applied
+	 */
+	public int entries() { return entries; }
+
+	/**
+	 * @param node the node
+	 * @return whether Mr X could be at the node
+	 */
+	public boolean contains(int node) { return nodes.contains(node); }
+
+	/**
+	 * @return the number of nodes Mr X could be at; 0 if he didn't start at one of the start nodes
+	 */
+	public int size() { return nodes.size(); }
+
+	/**
+	 * @return a copy of the nodes Mr X could be at
+	 */
+	@Nonnull public NodeSet nodes() { return nodes.copy(); }
+
+	/**
+	 * @return the nodes Mr X could be at
+	 */
+	@Nonnull public ImmutableSet<Integer> asSet() {
+		ImmutableSet.Builder<Integer> set = ImmutableSet.builder();
+		for (int node = nodes.next(0); node >= 0; node = nodes.next(node + 1)) set.add(node);
+		return set.build();
+	}
+
+	@Override public String toString() {
+		return "PossibleLocations{entries=" + entries + ", nodes=" + nodes + "}";
+	}
+}
@@ -0,0 +1,163 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+/**
+ * An immutable, array based copy of a {@link GameSetup#graph} for fast move generation.
+ * <br>
+ * The neighbours of every node are stored in compressed sparse row form: the edges of node
+ * {@code n} are the indices from {@link #start(int)} (inclusive) to {@link #end(int)} (exclusive),
+ * each with the neighbour it leads to and a bitmask of its transports, see {@link #mask(Transport)}.
+ * Nodes are indexed by their own number, so node numbers must not be negative.
+ * <br>
+ * Use {@link #of(GameSetup)} to get the graph of a setup; it is only compiled once per graph.
+ */
+public final class TransportGraph {
+
+	private static final LoadingCache<ImmutableValueGraph<Integer, ImmutableSet<Transport>>, TransportGraph>
+			CACHE = CacheBuilder.newBuilder()
+			.weakKeys() // compares keys by identity, graph equality is a deep comparison
+			.build(CacheLoader.from(TransportGraph::new));
+
+	// Transports that the given ticket can be used on, indexed by Ticket.ordinal()
+	private static final int[] TICKET_MASKS = new int[Ticket.values().length];
+	static {
+		for (Transport t : Transport.values()) TICKET_MASKS[t.requiredTicket().ordinal()] |= mask(t);
+		// A secret ticket can be used on any route
+		TICKET_MASKS[Ticket.SECRET.ordinal()] = (1 << Transport.values().length) - 1;
+	}
+
+	private final boolean[] nodes;
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final byte[] transports;
+	private final int nodeCount;
+
+	private TransportGraph(ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		int max = -1;
+		for (int node : graph.nodes()) {
+			if (node < 0) throw new IllegalArgumentException("Negative node " + node);
+			max = Math.max(max, node);
+		}
+		this.nodes = new boolean[max + 1];
+		this.offsets = new int[max + 2];
+		// Each undirected edge is stored once from both of its ends
+		this.neighbours = new int[graph.edges().size() * 2];
+		this.transports = new byte[neighbours.length];
+		int edge = 0;
+		for (int node = 0; node <= max; node++) {
+			offsets[node] = edge;
+			if (!graph.nodes().contains(node)) continue;
+			nodes[node] = true;
+			for (int neighbour : graph.adjacentNodes(node)) {
+				int bits = 0;
+				for (Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of())) bits |= mask(t);
+				neighbours[edge] = neighbour;
+				transports[edge] = (byte) bits;
+				edge++;
+			}
+		}
+		offsets[max + 1] = edge;
+		this.nodeCount = graph.nodes().size();
+	}
+
+	/**
+	 * @param setup the game setup
+	 * @return the compiled graph of the given setup
+	 */
+	@Nonnull public static TransportGraph of(@Nonnull GameSetup setup) {
+		return of(setup.graph);
+	}
+
+	/**
+	 * @param graph the game graph
+	 * @return the compiled version of the given graph
+	 */
+	@Nonnull public static TransportGraph of(
+			@Nonnull ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph) {
+		return CACHE.getUnchecked(Objects.requireNonNull(graph));
+	}
+
+	/**
+	 * @param transport the transport
+	 * @return the bit of the given transport in an edge bitmask
+	 */
+	public static int mask(@Nonnull Transport transport) { return 1 << transport.ordinal(); }
+
+	/**
+	 * @param ticket the ticket
+	 * @return the bitmask of transports the given ticket can be used on; all of them for
+	 * {@link Ticket#SECRET} and none for {@link Ticket#DOUBLE}
+	 */
+	public static int ticketMask(@Nonnull Ticket ticket) { return TICKET_MASKS[ticket.ordinal()]; }
+
+	/**
+	 * @return the number of nodes in the graph
+	 */
+	public int nodeCount() { return nodeCount; }
+
+	/**
+	 * @return one more than the largest node, node arrays of this size can be indexed by node
+	 */
+	public int nodeBound() { return nodes.length; }
+
+	/**
+	 * @return the number of edges, each undirected edge counts once from each of its ends
+	 */
+	public int edgeCount() { return neighbours.length; }
+
+	/**
+	 * @param node the node
+	 * @return whether the node is part of the graph
+	 */
+	public boolean contains(int node) { return node >= 0 && node < nodes.length && nodes[node]; }
+
+	/**
+	 * @param node the node, must be part of the graph
+	 * @return the index of the first edge of the node
+	 */
+	public int start(int node) { return offsets[node]; }
+
+	/**
+	 * @param node the node, must be part of the graph
+	 * @return one past the index of the last edge of the node
+	 */
+	public int end(int node) { return offsets[node + 1]; }
+
+	/**
+	 * @param edge the edge index
+	 * @return the node the edge leads to
+	 */
+	public int neighbour(int edge) { return neighbours[edge]; }
+
+	/**
+	 * @param edge the edge index
+	 * @return the bitmask of transports on the edge
+	 */
+	public int transports(int edge) { return transports[edge]; }
+
+	/**
+	 * @param source the source node
+	 * @param destination the destination node
+	 * @return the bitmask of transports between the two nodes; 0 if they are not adjacent or
+	 * either is not part of the graph
+	 */
+	public int transportsBetween(int source, int destination) {
+		if (!contains(source)) return 0;
+		for (int e = offsets[source]; e < offsets[source + 1]; e++) {
+			if (neighbours[e] == destination) return transports[e];
+		}
+		return 0;
+	}
+}
@@ -15,6 +15,11 @@ import org.junit.runners.Suite;
 		GameStateDetectivesAvailableMovesTest.class,
 		GameStateMrXAvailableMovesTest.class,
 		GameStatePlayoutTest.class,
-		ModelObserverTest.class
+		GameStateMovablePiecesTest.class,
+		ModelObserverTest.class,
+		InternedMovesTest.class,
+		NodeSetTest.class,
+		PossibleLocationsTest.class,
+		TransportGraphTest.class
 })
 public class AllTest {}
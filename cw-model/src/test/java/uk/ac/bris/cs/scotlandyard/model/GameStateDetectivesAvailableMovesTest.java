@@ -161,5 +161,23 @@ public class GameStateDetectivesAvailableMovesTest extends ParameterisedModelTes
 				taxi(BLUE, 85, 84));
 	}
 
+	@Test public void testDetectiveMovesFollowOtherDetectivesMoving() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var red = new Player(RED, defaultDetectiveTickets(), 1);
+		var green = new Player(GREEN, defaultDetectiveTickets(), 9);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 19);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, red, green, blue);
+		state = state.advance(taxi(MRX, 86, 103));
+		assertThat(state.getAvailableMoves())
+				.contains(taxi(GREEN, 9, 20), taxi(BLUE, 19, 8), taxi(BLUE, 19, 32))
+				.doesNotContain(taxi(GREEN, 9, 1), taxi(GREEN, 9, 19), taxi(BLUE, 19, 9));
+		// Red leaves 1 free for green and takes 8 away from blue
+		state = state.advance(taxi(RED, 1, 8));
+		assertThat(state.getAvailableMoves()).containsExactlyInAnyOrder(
+				taxi(GREEN, 9, 1),
+				taxi(GREEN, 9, 20),
+				taxi(BLUE, 19, 32));
+	}
+
 
 }
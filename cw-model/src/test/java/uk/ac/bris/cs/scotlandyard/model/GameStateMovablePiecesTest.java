@@ -0,0 +1,65 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+
+/**
+ * Tests that {@link Board#hasAnyMove(Piece)} and {@link Board#movablePieces()} agree with
+ * {@link Board#getAvailableMoves()}
+ */
+public class GameStateMovablePiecesTest extends ParameterisedModelTestBase {
+
+	// Checks the answers against the ones worked out from the available moves
+	private static void assertMatchesAvailableMoves(GameState state) {
+		var expected = ImmutableSet.<Piece>builder();
+		for (Move move : state.getAvailableMoves()) expected.add(move.commencedBy());
+		assertThat(state.movablePieces()).isEqualTo(expected.build());
+		for (Piece piece : state.getPlayers())
+			assertThat(state.hasAnyMove(piece)).isEqualTo(expected.build().contains(piece));
+	}
+
+	@Test public void testOnlyMrXCanMoveAtStart() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 85);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue);
+		assertThat(state.movablePieces()).isEqualTo(ImmutableSet.of(MRX));
+		assertThat(state.hasAnyMove(MRX)).isEqualTo(true);
+		assertThat(state.hasAnyMove(BLUE)).isEqualTo(false);
+		assertMatchesAvailableMoves(state);
+	}
+
+	@Test public void testDetectivesWithoutTicketsCannotMove() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, defaultDetectiveTickets(), 85);
+		var red = new Player(RED, makeTickets(0, 0, 0, 0, 0), 70);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue, red);
+		state = state.advance(taxi(MRX, 86, 103));
+		assertThat(state.movablePieces()).isEqualTo(ImmutableSet.of(BLUE));
+		assertThat(state.hasAnyMove(RED)).isEqualTo(false);
+		assertMatchesAvailableMoves(state);
+		state = state.advance(taxi(BLUE, 85, 68));
+		assertThat(state.movablePieces()).isEqualTo(ImmutableSet.of(MRX));
+		assertMatchesAvailableMoves(state);
+	}
+
+	@Test public void testNoPieceCanMoveOnceGameIsOver() {
+		var mrX = new Player(MRX, defaultMrXTickets(), 86);
+		var blue = new Player(BLUE, makeTickets(0, 0, 0, 0, 0), 105);
+		GameState state = gameStateFactory.build(standard24MoveSetup(), mrX, blue);
+		assertThat(state.getWinner()).isNotEmpty();
+		assertThat(state.movablePieces()).isEmpty();
+		assertThat(state.hasAnyMove(MRX)).isEqualTo(false);
+		assertMatchesAvailableMoves(state);
+	}
+
+}
@@ -0,0 +1,123 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.graph.ValueGraphBuilder;
+import com.google.common.io.Resources;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+
+import uk.ac.bris.cs.scotlandyard.model.Move.DoubleMove;
+import uk.ac.bris.cs.scotlandyard.model.Move.SingleMove;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
+
+/**
+ * Tests that {@link InternedMoves} hands out one instance per move
+ */
+public class InternedMovesTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = readGraph(Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testSameSingleMoveIsSameInstance() {
+		InternedMoves interned = InternedMoves.of(setup);
+		SingleMove move = interned.single(RED, 1, Ticket.TAXI, 8);
+		assertThat(interned.single(RED, 1, Ticket.TAXI, 8) == move).isEqualTo(true);
+		assertThat(move).isEqualTo(new SingleMove(RED, 1, Ticket.TAXI, 8));
+		assertThat(interned.single(MRX, 1, Ticket.TAXI, 8) == move).isEqualTo(false);
+		assertThat(interned.single(RED, 1, Ticket.SECRET, 8) == move).isEqualTo(false);
+	}
+
+	@Test public void testSameDoubleMoveIsSameInstance() {
+		InternedMoves interned = InternedMoves.of(setup);
+		DoubleMove move = interned.doubleMove(MRX, 1, Ticket.TAXI, 8, Ticket.TAXI, 1);
+		assertThat(interned.doubleMove(MRX, 1, Ticket.TAXI, 8, Ticket.TAXI, 1) == move).isEqualTo(true);
+		assertThat(move).isEqualTo(new DoubleMove(MRX, 1, Ticket.TAXI, 8, Ticket.TAXI, 1));
+		assertThat(interned.doubleMove(MRX, 1, Ticket.TAXI, 8, Ticket.SECRET, 1) == move).isEqualTo(false);
+	}
+
+	@Test public void testMovesAlongEdgesAreSameInstances() {
+		InternedMoves interned = InternedMoves.of(setup);
+		TransportGraph compiled = TransportGraph.of(setup);
+		for (int edge1 = compiled.start(1); edge1 < compiled.end(1); edge1++) {
+			int destination1 = compiled.neighbour(edge1);
+			assertThat(interned.singleAlong(RED, 1, edge1, Ticket.TAXI)
+					== interned.single(RED, 1, Ticket.TAXI, destination1)).isEqualTo(true);
+			for (int edge2 = compiled.start(destination1); edge2 < compiled.end(destination1); edge2++) {
+				DoubleMove move = interned.doubleAlong(MRX, 1, edge1, Ticket.SECRET, edge2, Ticket.BUS);
+				assertThat(move).isEqualTo(new DoubleMove(MRX, 1, Ticket.SECRET, destination1,
+						Ticket.BUS, compiled.neighbour(edge2)));
+				assertThat(interned.doubleMove(MRX, 1, Ticket.SECRET, destination1, Ticket.BUS, compiled.neighbour(edge2))
+						== move).isEqualTo(true);
+			}
+		}
+	}
+
+	@Test public void testMoveOffTheGraphIsNotInterned() {
+		InternedMoves interned = InternedMoves.of(setup);
+		SingleMove move = interned.single(RED, 1, Ticket.TAXI, 199);
+		assertThat(move).isEqualTo(new SingleMove(RED, 1, Ticket.TAXI, 199));
+		assertThat(interned.single(RED, 1, Ticket.TAXI, 199) == move).isEqualTo(false);
+	}
+
+	@Test public void testInternReturnsCanonicalInstance() {
+		InternedMoves interned = InternedMoves.of(setup);
+		Move move = interned.intern(new SingleMove(MRX, 1, Ticket.TAXI, 9));
+		assertThat(interned.intern(new SingleMove(MRX, 1, Ticket.TAXI, 9)) == move).isEqualTo(true);
+		assertThat(interned.single(MRX, 1, Ticket.TAXI, 9) == move).isEqualTo(true);
+	}
+
+	@Test public void testAvailableMovesAreInterned() {
+		InternedMoves interned = InternedMoves.of(setup);
+		Board.GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(RED, defaultDetectiveTickets(), 26)));
+		assertThat(state.getAvailableMoves().isEmpty()).isEqualTo(false);
+		for (Move move : state.getAvailableMoves())
+			assertThat(interned.intern(move) == move).isEqualTo(true);
+	}
+
+	@Test public void testInternedOncePerGraph() {
+		assertThat(InternedMoves.of(setup) == InternedMoves.of(new GameSetup(graph, ImmutableList.of(true))))
+				.isEqualTo(true);
+	}
+
+	// A setup on a graph of its own, 1 - 2 by taxi
+	private static GameSetup newSetup() {
+		return new GameSetup(ValueGraphBuilder.undirected()
+				.<Integer, ImmutableSet<Transport>>immutable()
+				.putEdgeValue(1, 2, ImmutableSet.of(Transport.TAXI))
+				.build(), ImmutableList.of(true));
+	}
+
+	@Test public void testTableIsDroppedWithItsGraph() {
+		WeakReference<InternedMoves> table = new WeakReference<>(InternedMoves.of(newSetup()));
+		// Adding the tables of new graphs clears out the entries of graphs that are gone
+		for (int i = 0; i < 100 && table.get() != null; i++) {
+			System.gc();
+			InternedMoves.of(newSetup());
+		}
+		assertThat(table.get() == null).isEqualTo(true);
+	}
+
+}
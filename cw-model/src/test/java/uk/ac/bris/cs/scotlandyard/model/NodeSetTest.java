@@ -0,0 +1,109 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.io.Resources;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ParameterisedModelTestBase.makeTickets;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.RED;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
+
+/**
+ * Tests the bitset operations of {@link NodeSet} and the reachability helpers built on them
+ */
+public class NodeSetTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static TransportGraph compiled;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = readGraph(Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		compiled = TransportGraph.of(graph);
+	}
+
+	private static List<Integer> nodes(NodeSet set) {
+		List<Integer> nodes = new ArrayList<>();
+		for (int n = set.next(0); n >= 0; n = set.next(n + 1)) nodes.add(n);
+		return nodes;
+	}
+
+	@Test public void testAddRemoveAcrossWords() {
+		NodeSet set = new NodeSet(compiled);
+		assertThat(set.isEmpty()).isEqualTo(true);
+		set.add(1);
+		set.add(63);
+		set.add(64);
+		set.add(199);
+		assertThat(nodes(set)).containsExactly(1, 63, 64, 199);
+		assertThat(set.size()).isEqualTo(4);
+		assertThat(set.contains(64)).isEqualTo(true);
+		assertThat(set.contains(65)).isEqualTo(false);
+		assertThat(set.contains(-1)).isEqualTo(false);
+		assertThat(set.contains(1000)).isEqualTo(false);
+		set.remove(63);
+		set.move(199, 128);
+		assertThat(nodes(set)).containsExactly(1, 64, 128);
+		set.clear();
+		assertThat(set.isEmpty()).isEqualTo(true);
+	}
+
+	@Test public void testSetOperations() {
+		NodeSet a = new NodeSet(compiled);
+		NodeSet b = new NodeSet(compiled);
+		a.add(5);
+		a.add(100);
+		b.add(100);
+		b.add(150);
+		assertThat(a.intersects(b)).isEqualTo(true);
+		NodeSet union = a.copy();
+		union.addAll(b);
+		assertThat(nodes(union)).containsExactly(5, 100, 150);
+		NodeSet difference = a.copy();
+		difference.removeAll(b);
+		assertThat(nodes(difference)).containsExactly(5);
+		NodeSet intersection = a.copy();
+		intersection.retainAll(b);
+		assertThat(nodes(intersection)).containsExactly(100);
+		assertThat(difference.intersects(b)).isEqualTo(false);
+		assertThat(nodes(a)).containsExactly(5, 100);
+	}
+
+	@Test public void testReachableByTransport() {
+		NodeSet taxi = new NodeSet(compiled);
+		taxi.addReachable(compiled, 1, TransportGraph.mask(Transport.TAXI));
+		assertThat(nodes(taxi)).containsExactly(8, 9);
+		NodeSet underground = new NodeSet(compiled);
+		underground.addReachable(compiled, 1, TransportGraph.mask(Transport.UNDERGROUND));
+		assertThat(nodes(underground)).containsExactly(46);
+		NodeSet any = new NodeSet(compiled);
+		any.addReachable(compiled, 1, TransportGraph.ticketMask(ScotlandYard.Ticket.SECRET));
+		assertThat(nodes(any)).containsExactly(8, 9, 46, 58);
+	}
+
+	@Test public void testDetectiveThreatsFollowTickets() {
+		Board.GameState state = new MyGameStateFactory().build(new GameSetup(graph, ScotlandYard.STANDARD24MOVES),
+				new Player(MRX, defaultMrXTickets(), 35),
+				ImmutableList.of(
+						new Player(RED, makeTickets(0, 5, 0, 0, 0), 1),
+						new Player(BLUE, makeTickets(5, 0, 0, 0, 0), 20)));
+		assertThat(nodes(NodeSet.detectiveThreats(state))).containsExactly(2, 9, 33, 46, 58);
+		assertThat(nodes(NodeSet.detectiveLocations(state))).containsExactly(1, 20);
+	}
+
+}
@@ -0,0 +1,102 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.io.Resources;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import uk.ac.bris.cs.scotlandyard.model.Board.GameState;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.Detective.BLUE;
+import static uk.ac.bris.cs.scotlandyard.model.Piece.MrX.MRX;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultDetectiveTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.defaultMrXTickets;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
+
+/**
+ * Tests that {@link PossibleLocations} follows Mr X's travel log and never loses him
+ */
+public class PossibleLocationsTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+	private static GameSetup setup;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = readGraph(Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+		setup = new GameSetup(graph, ScotlandYard.STANDARD24MOVES);
+	}
+
+	@Test public void testHiddenEntriesFollowTheirTicket() {
+		PossibleLocations taxi = new PossibleLocations(setup, ImmutableList.of(1));
+		taxi.advance(LogEntry.hidden(Ticket.TAXI));
+		assertThat(taxi.asSet()).isEqualTo(ImmutableSet.of(8, 9));
+		PossibleLocations bus = new PossibleLocations(setup, ImmutableList.of(1));
+		bus.advance(LogEntry.hidden(Ticket.BUS));
+		assertThat(bus.asSet()).isEqualTo(ImmutableSet.of(46, 58));
+		PossibleLocations secret = new PossibleLocations(setup, ImmutableList.of(1));
+		secret.advance(LogEntry.hidden(Ticket.SECRET));
+		assertThat(secret.asSet()).isEqualTo(ImmutableSet.of(8, 9, 46, 58));
+		assertThat(secret.entries()).isEqualTo(1);
+	}
+
+	@Test public void testRevealCollapsesToRevealedNode() {
+		PossibleLocations locations = new PossibleLocations(setup, ImmutableList.of(1, 2, 3));
+		locations.advance(LogEntry.reveal(Ticket.TAXI, 8));
+		assertThat(locations.asSet()).isEqualTo(ImmutableSet.of(8));
+		assertThat(locations.size()).isEqualTo(1);
+	}
+
+	@Test public void testDetectiveLocationsAreTakenOut() {
+		GameState state = new MyGameStateFactory().build(setup,
+				new Player(MRX, defaultMrXTickets(), 35),
+				ImmutableList.of(new Player(BLUE, defaultDetectiveTickets(), 26)));
+		PossibleLocations locations = PossibleLocations.of(state, ImmutableList.of(26, 35, 45));
+		assertThat(locations.asSet()).isEqualTo(ImmutableSet.of(35, 45));
+		assertThat(locations.contains(26)).isEqualTo(false);
+	}
+
+	@Test public void testNeverLosesMrXInRandomGames() {
+		for (int game = 0; game < 20; game++) {
+			Random random = new Random(game);
+			var detectiveLocations = ScotlandYard.generateDetectiveLocations(game, 5);
+			var detectives = ImmutableList.<Player>builder();
+			for (int i = 0; i < 5; i++) {
+				detectives.add(new Player(ScotlandYard.DETECTIVES.asList().get(i), defaultDetectiveTickets(),
+						detectiveLocations.get(i)));
+			}
+			int mrXLocation = ScotlandYard.generateMrXLocation(game);
+			GameState state = new MyGameStateFactory().build(setup,
+					new Player(MRX, defaultMrXTickets(), mrXLocation), detectives.build());
+			PossibleLocations tracked = PossibleLocations.of(state, ScotlandYard.MRX_LOCATIONS);
+			while (state.getWinner().isEmpty() && !state.getAvailableMoves().isEmpty()) {
+				var moves = state.getAvailableMoves().asList();
+				Move move = moves.get(random.nextInt(moves.size()));
+				if (move.commencedBy().isMrX()) {
+					mrXLocation = move instanceof Move.DoubleMove doubleMove
+							? doubleMove.destination2
+							: ((Move.SingleMove) move).destination;
+				}
+				state = state.advance(move);
+				tracked.update(state);
+				if (state.getWinner().isEmpty()) assertThat(tracked.contains(mrXLocation)).isEqualTo(true);
+				// Updated every turn it knows at least as much as from the whole log at once
+				NodeSet extra = tracked.nodes();
+				extra.removeAll(PossibleLocations.of(state, ScotlandYard.MRX_LOCATIONS).nodes());
+				assertThat(extra.isEmpty()).isEqualTo(true);
+			}
+			assertThat(tracked.entries()).isEqualTo(state.getMrXTravelLog().size());
+		}
+	}
+
+}
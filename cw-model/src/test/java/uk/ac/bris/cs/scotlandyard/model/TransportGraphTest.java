@@ -0,0 +1,76 @@
+package uk.ac.bris.cs.scotlandyard.model;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.ImmutableValueGraph;
+import com.google.common.io.Resources;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Ticket;
+import uk.ac.bris.cs.scotlandyard.model.ScotlandYard.Transport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.ac.bris.cs.scotlandyard.model.ScotlandYard.readGraph;
+
+/**
+ * Tests that the compiled {@link TransportGraph} matches the graph it was compiled from
+ */
+public class TransportGraphTest {
+
+	private static ImmutableValueGraph<Integer, ImmutableSet<Transport>> graph;
+
+	@BeforeClass public static void setUp() throws IOException {
+		graph = readGraph(Resources.toString(Resources.getResource("graph.txt"),
+				StandardCharsets.UTF_8));
+	}
+
+	@Test public void testNeighboursAndTransportsMatchGraph() {
+		TransportGraph compiled = TransportGraph.of(graph);
+		assertThat(compiled.nodeCount()).isEqualTo(graph.nodes().size());
+		for (int node : graph.nodes()) {
+			assertThat(compiled.contains(node)).isEqualTo(true);
+			Set<Integer> neighbours = new HashSet<>();
+			for (int edge = compiled.start(node); edge < compiled.end(node); edge++) {
+				int neighbour = compiled.neighbour(edge);
+				neighbours.add(neighbour);
+				int expected = 0;
+				for (Transport t : graph.edgeValueOrDefault(node, neighbour, ImmutableSet.of()))
+					expected |= TransportGraph.mask(t);
+				assertThat(compiled.transports(edge)).isEqualTo(expected);
+				assertThat(compiled.transportsBetween(node, neighbour)).isEqualTo(expected);
+			}
+			assertThat(neighbours).isEqualTo(graph.adjacentNodes(node));
+		}
+	}
+
+	@Test public void testMissingNodesAndEdges() {
+		TransportGraph compiled = TransportGraph.of(graph);
+		assertThat(compiled.contains(0)).isEqualTo(false);
+		assertThat(compiled.contains(-1)).isEqualTo(false);
+		assertThat(compiled.contains(compiled.nodeBound())).isEqualTo(false);
+		assertThat(compiled.transportsBetween(1, 199)).isEqualTo(0);
+		assertThat(compiled.transportsBetween(-1, 1)).isEqualTo(0);
+	}
+
+	@Test public void testCompiledOncePerGraph() {
+		assertThat(TransportGraph.of(graph) == TransportGraph.of(graph)).isEqualTo(true);
+		assertThat(TransportGraph.of(new GameSetup(graph, ScotlandYard.STANDARD24MOVES)) == TransportGraph.of(graph))
+				.isEqualTo(true);
+	}
+
+	@Test public void testTicketMasks() {
+		assertThat(TransportGraph.ticketMask(Ticket.TAXI)).isEqualTo(TransportGraph.mask(Transport.TAXI));
+		assertThat(TransportGraph.ticketMask(Ticket.BUS)).isEqualTo(TransportGraph.mask(Transport.BUS));
+		assertThat(TransportGraph.ticketMask(Ticket.UNDERGROUND)).isEqualTo(TransportGraph.mask(Transport.UNDERGROUND));
+		assertThat(TransportGraph.ticketMask(Ticket.DOUBLE)).isEqualTo(0);
+		for (Transport t : Transport.values())
+			assertThat(TransportGraph.ticketMask(Ticket.SECRET) & TransportGraph.mask(t)).isEqualTo(TransportGraph.mask(t));
+	}
+
+}